@@ -132,6 +132,16 @@ public class IntArrayList implements Cloneable {
 		size++;
 	}
 	
+	public void insertRange(int index, int count) {
+		if (index > size || index < 0 || count < 0)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		
+		ensureCapacity(size + count);
+		arraycopy(data, index, data, index + count, size - index);
+		Arrays.fill(data, index, index + count, 0);
+		size += count;
+	}
+	
 	public int remove(int index) {
 		checkRange(index);
 		
@@ -148,7 +158,10 @@ public class IntArrayList implements Cloneable {
 		size = 0;
 	}
 	
-	protected void removeRange(int fromIndex, int toIndex) {
+	public void removeRange(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+		
 		int numMoved = size - toIndex;
 		arraycopy(data, toIndex, data, fromIndex, numMoved);
 		size -= (toIndex - fromIndex);
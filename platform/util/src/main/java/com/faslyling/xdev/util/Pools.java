@@ -1,5 +1,7 @@
 package com.faslyling.xdev.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public final class Pools {
 	
@@ -85,5 +87,95 @@ public final class Pools {
 			}
 		}
 	}
+	
+	public static class ThreadLocalPool<T> implements Pool<T> {
+		private static final int STRIPE_WIDTH = 8;
+		
+		private final int localPoolSize;
+		private final SynchronizedPool<T> sharedPool;
+		private final int stripeMask;
+		private final AtomicLongArray counts;
+		private final AtomicInteger nextStripe = new AtomicInteger();
+		private final ThreadLocal<LocalPool> localPool = new ThreadLocal<LocalPool>() {
+			@Override
+			protected LocalPool initialValue() {
+				return new LocalPool(localPoolSize, (nextStripe.getAndIncrement() & stripeMask) * STRIPE_WIDTH);
+			}
+		};
+		
+		public ThreadLocalPool(int localPoolSize, int sharedPoolSize) {
+			if (localPoolSize <= 0)
+				throw new IllegalArgumentException("The local pool size must be > 0");
+			
+			this.localPoolSize = localPoolSize;
+			sharedPool = new SynchronizedPool<>(sharedPoolSize);
+			int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+			stripeMask = stripes - 1;
+			counts = new AtomicLongArray(stripes * STRIPE_WIDTH);
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public T acquire() {
+			LocalPool pool = localPool.get();
+			T instance;
+			if (pool.size > 0) {
+				instance = (T) pool.instances[--pool.size];
+				pool.instances[pool.size] = null;
+			} else {
+				instance = sharedPool.acquire();
+			}
+			
+			counts.incrementAndGet(instance != null ? pool.stripe : pool.stripe + 1);
+			return instance;
+		}
+		
+		@Override
+		public boolean release(T instance) {
+			LocalPool pool = localPool.get();
+			if (pool.contains(instance))
+				throw new IllegalStateException("Already in the pool!");
+			
+			if (pool.size < pool.instances.length) {
+				pool.instances[pool.size++] = instance;
+				return true;
+			}
+			return sharedPool.release(instance);
+		}
+		
+		public long getHitCount() {
+			return sum(0);
+		}
+		
+		public long getMissCount() {
+			return sum(1);
+		}
+		
+		private long sum(int offset) {
+			long sum = 0;
+			for (int i = offset; i < counts.length(); i += STRIPE_WIDTH) {
+				sum += counts.get(i);
+			}
+			return sum;
+		}
+		
+		private static final class LocalPool {
+			final Object[] instances;
+			final int stripe;
+			int size;
+			
+			LocalPool(int maxPoolSize, int stripe) {
+				instances = new Object[maxPoolSize];
+				this.stripe = stripe;
+			}
+			
+			boolean contains(Object instance) {
+				for (int i = 0; i < size; i++) {
+					if (instances[i] == instance)
+						return true;
+				}
+				return false;
+			}
+		}
+	}
 }
-
@@ -0,0 +1,310 @@
+package com.faslyling.xdev.util.text;
+
+import static java.lang.System.arraycopy;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+abstract class BlockContent<A> {
+	static final char[] EMPTY_TEXT = new char[0];
+	static final int BLOCK_SIZE = 16 * 1024;
+	private static final int MERGE_SIZE = BLOCK_SIZE / 2;
+	
+	Block<A>[] blocks;
+	int[] starts;
+	int blockCount;
+	int length;
+	private Object owner = new Object();
+	
+	BlockContent() {
+	}
+	
+	BlockContent(@NonNull BlockContent<A> content) {
+		blocks = Arrays.copyOf(content.blocks, content.blockCount);
+		starts = Arrays.copyOf(content.starts, content.blockCount);
+		blockCount = content.blockCount;
+		length = content.length;
+		content.owner = new Object();
+	}
+	
+	@NonNull
+	abstract A newArray(int length);
+	
+	abstract char charAt(@NonNull A text, int index);
+	
+	abstract void encode(@NonNull String text, @NonNull A dest, int destOffset);
+	
+	abstract void encode(@NonNull char[] text, int offset, @NonNull A dest, int destOffset, int count);
+	
+	abstract void decode(@NonNull A text, int offset, @NonNull char[] dest, int destOffset, int count);
+	
+	public int getBlockCount() {
+		return blockCount;
+	}
+	
+	void reset(int capacity) {
+		blocks = newBlocks(Math.max(4, capacity / BLOCK_SIZE + 1));
+		starts = new int[blocks.length];
+		blocks[0] = new Block<>(owner, newArray(BLOCK_SIZE));
+		blockCount = 1;
+		length = 0;
+	}
+	
+	void insertText(int start, @NonNull String text) {
+		int len = text.length();
+		int index = findBlock(start);
+		Block<A> block = writableBlock(index);
+		if (block.length() + len <= BLOCK_SIZE) {
+			block.moveGap(start - starts[index]);
+			encode(text, block.text, block.gapStart);
+			block.gapStart += len;
+			block.gapLength -= len;
+			blockInserted(index, len);
+		} else {
+			char[] chars = new char[len];
+			text.getChars(0, len, chars, 0);
+			insertChars(start, chars, 0, len);
+		}
+	}
+	
+	void insertChars(int start, @NonNull char[] text, int offset, int len) {
+		if (len == 0)
+			return;
+		
+		int index = findBlock(start);
+		Block<A> block = writableBlock(index);
+		int local = start - starts[index];
+		if (block.length() + len <= BLOCK_SIZE) {
+			block.moveGap(local);
+			encode(text, offset, block.text, block.gapStart, len);
+			block.gapStart += len;
+			block.gapLength -= len;
+			blockInserted(index, len);
+			return;
+		}
+		
+		int tailLength = block.length() - local;
+		A tail = newArray(tailLength);
+		block.copy(local, tailLength, tail, 0);
+		block.moveGap(local);
+		block.gapLength += tailLength;
+		
+		int pos = offset;
+		int end = offset + len;
+		int count = Math.min(BLOCK_SIZE - local, len);
+		encode(text, pos, block.text, block.gapStart, count);
+		block.gapStart += count;
+		block.gapLength -= count;
+		pos += count;
+		
+		int newBlocks = (end - pos + tailLength + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		insertBlocks(index + 1, newBlocks);
+		int tailStart = 0;
+		for (int i = index + 1; i <= index + newBlocks; i++) {
+			Block<A> next = blocks[i];
+			count = Math.min(BLOCK_SIZE, end - pos);
+			encode(text, pos, next.text, 0, count);
+			pos += count;
+			int tailCount = Math.min(BLOCK_SIZE - count, tailLength - tailStart);
+			arraycopy(tail, tailStart, next.text, count, tailCount);
+			tailStart += tailCount;
+			next.gapStart = count + tailCount;
+			next.gapLength = BLOCK_SIZE - next.gapStart;
+		}
+		
+		length += len;
+		updateStarts(index + 1);
+	}
+	
+	void deleteChars(int start, int len) {
+		if (len == 0)
+			return;
+		
+		int index = findBlock(start);
+		int first = index;
+		int local = start - starts[index];
+		int remaining = len;
+		while (remaining > 0) {
+			Block<A> block = writableBlock(index);
+			int count = Math.min(block.length() - local, remaining);
+			block.moveGap(local);
+			block.gapLength += count;
+			remaining -= count;
+			local = 0;
+			index++;
+		}
+		length -= len;
+		
+		int last = index - 1;
+		for (int i = last; i >= first; i--) {
+			if (blocks[i].length() == 0 && blockCount > 1)
+				removeBlocks(i, 1);
+		}
+		mergeSmallBlocks(Math.max(first - 1, 0), Math.min(first + 1, blockCount - 1));
+		updateStarts(Math.max(first - 1, 0));
+		shrink();
+	}
+	
+	char getChar(int offset) {
+		int index = findBlock(offset);
+		Block<A> block = blocks[index];
+		int local = offset - starts[index];
+		return charAt(block.text, local < block.gapStart ? local : local + block.gapLength);
+	}
+	
+	void getChars(int start, int length, @NonNull char[] dest, int destOffset) {
+		if (length == 0)
+			return;
+		
+		int index = findBlock(start);
+		int local = start - starts[index];
+		int end = destOffset + length;
+		while (destOffset < end) {
+			Block<A> block = blocks[index++];
+			int count = Math.min(block.length() - local, end - destOffset);
+			int before = Math.max(Math.min(block.gapStart - local, count), 0);
+			decode(block.text, local, dest, destOffset, before);
+			decode(block.text, local + before + block.gapLength, dest, destOffset + before, count - before);
+			destOffset += count;
+			local = 0;
+		}
+	}
+	
+	int findBlock(int offset) {
+		int low = 0;
+		int high = blockCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (starts[mid] <= offset)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+	
+	@NonNull
+	private Block<A> writableBlock(int index) {
+		Block<A> block = blocks[index];
+		if (block.owner != owner) {
+			A text = newArray(BLOCK_SIZE);
+			arraycopy(block.text, 0, text, 0, BLOCK_SIZE);
+			block = new Block<>(owner, text, block.gapStart, block.gapLength);
+			blocks[index] = block;
+		}
+		return block;
+	}
+	
+	private void blockInserted(int index, int len) {
+		length += len;
+		for (int i = index + 1; i < blockCount; i++) {
+			starts[i] += len;
+		}
+	}
+	
+	private void updateStarts(int from) {
+		int start = from == 0 ? 0 : starts[from - 1] + blocks[from - 1].length();
+		for (int i = from; i < blockCount; i++) {
+			starts[i] = start;
+			start += blocks[i].length();
+		}
+	}
+	
+	private void insertBlocks(int index, int count) {
+		if (blockCount + count > blocks.length)
+			resize(Math.max(blocks.length * 2, blockCount + count));
+		arraycopy(blocks, index, blocks, index + count, blockCount - index);
+		arraycopy(starts, index, starts, index + count, blockCount - index);
+		for (int i = index; i < index + count; i++) {
+			blocks[i] = new Block<>(owner, newArray(BLOCK_SIZE));
+		}
+		blockCount += count;
+	}
+	
+	private void removeBlocks(int index, int count) {
+		arraycopy(blocks, index + count, blocks, index, blockCount - index - count);
+		arraycopy(starts, index + count, starts, index, blockCount - index - count);
+		for (int i = blockCount - count; i < blockCount; i++) {
+			blocks[i] = null;
+		}
+		blockCount -= count;
+	}
+	
+	private void mergeSmallBlocks(int from, int to) {
+		for (int i = Math.min(to, blockCount - 1) - 1; i >= from; i--) {
+			Block<A> right = blocks[i + 1];
+			if (blocks[i].length() + right.length() <= MERGE_SIZE) {
+				Block<A> left = writableBlock(i);
+				left.moveGap(left.length());
+				right.copy(0, right.length(), left.text, left.gapStart);
+				left.gapStart += right.length();
+				left.gapLength -= right.length();
+				removeBlocks(i + 1, 1);
+			}
+		}
+	}
+	
+	private void shrink() {
+		if (blocks.length > 4 && blockCount < blocks.length / 4)
+			resize(Math.max(4, blockCount * 2));
+	}
+	
+	private void resize(int capacity) {
+		Block<A>[] blocksN = newBlocks(capacity);
+		int[] startsN = new int[capacity];
+		arraycopy(blocks, 0, blocksN, 0, blockCount);
+		arraycopy(starts, 0, startsN, 0, blockCount);
+		blocks = blocksN;
+		starts = startsN;
+	}
+	
+	@NonNull
+	@SuppressWarnings("unchecked")
+	private static <A> Block<A>[] newBlocks(int capacity) {
+		return (Block<A>[]) new Block[capacity];
+	}
+	
+	static final class Block<A> {
+		final Object owner;
+		final A text;
+		int gapStart;
+		int gapLength;
+		
+		Block(Object owner, A text) {
+			this(owner, text, 0, BLOCK_SIZE);
+		}
+		
+		Block(Object owner, A text, int gapStart, int gapLength) {
+			this.owner = owner;
+			this.text = text;
+			this.gapStart = gapStart;
+			this.gapLength = gapLength;
+		}
+		
+		int length() {
+			return BLOCK_SIZE - gapLength;
+		}
+		
+		void copy(int start, int len, A dest, int destOffset) {
+			if (start + len <= gapStart) {
+				arraycopy(text, start, dest, destOffset, len);
+			} else if (start >= gapStart) {
+				arraycopy(text, start + gapLength, dest, destOffset, len);
+			} else {
+				int before = gapStart - start;
+				arraycopy(text, start, dest, destOffset, before);
+				arraycopy(text, gapStart + gapLength, dest, destOffset + before, len - before);
+			}
+		}
+		
+		void moveGap(int newStart) {
+			int gapEnd = gapStart + gapLength;
+			if (newStart > gapStart)
+				arraycopy(text, gapEnd, text, gapStart, newStart - gapStart);
+			else if (newStart < gapStart)
+				arraycopy(text, newStart, text, newStart + gapLength, gapStart - newStart);
+			gapStart = newStart;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntPair;
+import com.faslyling.xdev.util.LongArrayList;
+
+import java.util.concurrent.Executor;
+
+class ChangeDispatcher implements Runnable {
+	private final TextModel model;
+	private final ModelChangeListener listener;
+	private final Executor executor;
+	private LongArrayList ranges = new LongArrayList();
+	private boolean textSet;
+	private int firstMovedLine = -1;
+	private boolean pending;
+	private boolean scheduled;
+	private long version;
+	
+	ChangeDispatcher(@NonNull TextModel model, @NonNull ModelChangeListener listener, @NonNull Executor executor) {
+		this.model = model;
+		this.listener = listener;
+		this.executor = executor;
+	}
+	
+	@NonNull
+	ModelChangeListener getListener() {
+		return listener;
+	}
+	
+	synchronized void textSet() {
+		ranges = new LongArrayList();
+		firstMovedLine = -1;
+		textSet = true;
+		pending = true;
+	}
+	
+	synchronized void linesInserted(int startLine, int numLines) {
+		for (int i = 0; i < ranges.size(); i++) {
+			long range = ranges.get(i);
+			int start = IntPair.first(range);
+			int end = IntPair.second(range);
+			ranges.set(i, IntPair.of(start > startLine ? start + numLines : start,
+					end > startLine ? end + numLines : end));
+		}
+		if (firstMovedLine > startLine)
+			firstMovedLine += numLines;
+		if (numLines != 0)
+			moved(startLine + 1);
+		addRange(startLine, startLine + numLines);
+	}
+	
+	synchronized void linesRemoved(int startLine, int numLines) {
+		int endLine = startLine + numLines;
+		for (int i = 0; i < ranges.size(); i++) {
+			long range = ranges.get(i);
+			int start = IntPair.first(range);
+			int end = IntPair.second(range);
+			ranges.set(i, IntPair.of(start <= startLine ? start : start <= endLine ? startLine : start - numLines,
+					end <= startLine ? end : end <= endLine ? startLine : end - numLines));
+		}
+		if (firstMovedLine > startLine)
+			firstMovedLine = Math.max(firstMovedLine - numLines, startLine + 1);
+		if (numLines != 0)
+			moved(startLine + 1);
+		addRange(startLine, startLine);
+	}
+	
+	synchronized void linesChanged(int startLine, int endLine) {
+		addRange(startLine, endLine);
+	}
+	
+	private void moved(int line) {
+		if (firstMovedLine == -1 || line < firstMovedLine)
+			firstMovedLine = line;
+	}
+	
+	private void addRange(int startLine, int endLine) {
+		int index = ranges.binarySearch(IntPair.of(startLine, endLine));
+		if (index < 0)
+			ranges.add(-index - 1, IntPair.of(startLine, endLine));
+		
+		int count = 0;
+		for (int i = 0; i < ranges.size(); i++) {
+			long range = ranges.get(i);
+			if (count > 0 && IntPair.first(range) <= IntPair.second(ranges.get(count - 1)) + 1) {
+				int start = IntPair.first(ranges.get(count - 1));
+				int end = Math.max(IntPair.second(ranges.get(count - 1)), IntPair.second(range));
+				ranges.set(count - 1, IntPair.of(start, end));
+			} else {
+				ranges.set(count++, range);
+			}
+		}
+		ranges.removeRange(count, ranges.size());
+		pending = true;
+	}
+	
+	void flush(long version) {
+		synchronized (this) {
+			this.version = version;
+			if (!pending || scheduled)
+				return;
+			scheduled = true;
+		}
+		executor.execute(this);
+	}
+	
+	@Override
+	public void run() {
+		ModelChange change;
+		synchronized (this) {
+			change = new ModelChange(version, textSet, ranges, firstMovedLine);
+			ranges = new LongArrayList();
+			firstMovedLine = -1;
+			textSet = false;
+			pending = false;
+			scheduled = false;
+		}
+		listener.modelChanged(model, change);
+	}
+}
@@ -0,0 +1,142 @@
+package com.faslyling.xdev.util.text;
+
+import static java.lang.System.arraycopy;
+
+import androidx.annotation.NonNull;
+
+public class ChunkedContent extends BlockContent<char[]> implements Content {
+	
+	public ChunkedContent() {
+		reset(0);
+	}
+	
+	private ChunkedContent(@NonNull ChunkedContent content) {
+		super(content);
+	}
+	
+	@Override
+	public void set(@NonNull char[] text, int length) {
+		assert text.length >= length;
+		reset(length);
+		insertChars(0, text, 0, length);
+	}
+	
+	@Override
+	public void insert(int start, @NonNull String text) {
+		insertText(start, text);
+	}
+	
+	@Override
+	public void insert(int start, @NonNull CharSequence text) {
+		int len = text.length();
+		char[] chars = new char[len];
+		TextUtils.getChars(text, 0, len, chars, 0);
+		insertChars(start, chars, 0, len);
+	}
+	
+	@Override
+	public void insert(int start, @NonNull Segment segment) {
+		insertChars(start, segment.array, segment.offset, segment.count);
+	}
+	
+	@Override
+	public void delete(int start, int len) {
+		deleteChars(start, len);
+	}
+	
+	@Override
+	public int getLength() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int offset) {
+		return getChar(offset);
+	}
+	
+	@NonNull
+	@Override
+	public CharSequence getSequence(int start, int length) {
+		Segment segment = new Segment();
+		getText(start, length, segment);
+		return new TextCharSequence(segment.array, segment.offset, segment.count);
+	}
+	
+	@NonNull
+	@Override
+	public String getText() {
+		return getText(0, length);
+	}
+	
+	@NonNull
+	@Override
+	public String getText(int start, int length) {
+		Segment segment = new Segment();
+		getText(start, length, segment);
+		return segment.toString();
+	}
+	
+	@Override
+	public void getText(int start, int length, @NonNull Segment segment) {
+		if (length == 0) {
+			segment.array = EMPTY_TEXT;
+			segment.offset = 0;
+			segment.count = 0;
+			return;
+		}
+		
+		int index = findBlock(start);
+		Block<char[]> block = blocks[index];
+		int local = start - starts[index];
+		
+		if (local + length <= block.gapStart) {
+			segment.array = block.text;
+			segment.offset = local;
+			segment.count = length;
+			return;
+		} else if (local >= block.gapStart && local + length <= block.length()) {
+			segment.array = block.text;
+			segment.offset = local + block.gapLength;
+			segment.count = length;
+			return;
+		}
+		
+		char[] result = new char[length];
+		getChars(start, length, result, 0);
+		segment.array = result;
+		segment.offset = 0;
+		segment.count = length;
+	}
+	
+	@NonNull
+	@Override
+	public Content snapshot() {
+		return new ChunkedContent(this);
+	}
+	
+	@NonNull
+	@Override
+	char[] newArray(int length) {
+		return new char[length];
+	}
+	
+	@Override
+	char charAt(@NonNull char[] text, int index) {
+		return text[index];
+	}
+	
+	@Override
+	void encode(@NonNull String text, @NonNull char[] dest, int destOffset) {
+		text.getChars(0, text.length(), dest, destOffset);
+	}
+	
+	@Override
+	void encode(@NonNull char[] text, int offset, @NonNull char[] dest, int destOffset, int count) {
+		arraycopy(text, offset, dest, destOffset, count);
+	}
+	
+	@Override
+	void decode(@NonNull char[] text, int offset, @NonNull char[] dest, int destOffset, int count) {
+		arraycopy(text, offset, dest, destOffset, count);
+	}
+}
@@ -0,0 +1,269 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+public class CompactContent extends BlockContent<byte[]> implements Content {
+	private static final Charset LATIN_1 = StandardCharsets.ISO_8859_1;
+	
+	private Content wide;
+	
+	public CompactContent() {
+		reset(0);
+	}
+	
+	private CompactContent(@NonNull CompactContent content) {
+		super(content);
+	}
+	
+	private CompactContent(@NonNull Content wide) {
+		this.wide = wide;
+	}
+	
+	public boolean isCompact() {
+		return wide == null;
+	}
+	
+	@Override
+	public void set(@NonNull char[] text, int length) {
+		assert text.length >= length;
+		if (!isLatin1(text, 0, length)) {
+			reset(0);
+			wide = new ChunkedContent();
+			wide.set(text, length);
+			return;
+		}
+		
+		wide = null;
+		reset(length);
+		insertChars(0, text, 0, length);
+	}
+	
+	@Override
+	public void insert(int start, @NonNull String text) {
+		if (wide == null && !isLatin1(text))
+			inflate();
+		
+		if (wide != null)
+			wide.insert(start, text);
+		else
+			insertText(start, text);
+	}
+	
+	@Override
+	public void insert(int start, @NonNull CharSequence text) {
+		int len = text.length();
+		char[] chars = new char[len];
+		TextUtils.getChars(text, 0, len, chars, 0);
+		insert(start, new Segment(chars, 0, len));
+	}
+	
+	@Override
+	public void insert(int start, @NonNull Segment segment) {
+		if (wide == null && !isLatin1(segment.array, segment.offset, segment.count))
+			inflate();
+		
+		if (wide != null)
+			wide.insert(start, segment);
+		else
+			insertChars(start, segment.array, segment.offset, segment.count);
+	}
+	
+	@Override
+	public void delete(int start, int len) {
+		if (wide != null)
+			wide.delete(start, len);
+		else
+			deleteChars(start, len);
+	}
+	
+	@Override
+	public int getLength() {
+		return wide != null ? wide.getLength() : length;
+	}
+	
+	@Override
+	public char charAt(int offset) {
+		return wide != null ? wide.charAt(offset) : getChar(offset);
+	}
+	
+	@NonNull
+	@Override
+	public CharSequence getSequence(int start, int length) {
+		if (wide != null)
+			return wide.getSequence(start, length);
+		
+		int index = findBlock(start);
+		Block<byte[]> block = blocks[index];
+		int local = start - starts[index];
+		if (local + length <= block.length())
+			return new Latin1Sequence(block.text, block.gapStart, block.gapLength, local, length);
+		
+		char[] chars = new char[length];
+		getChars(start, length, chars, 0);
+		return new TextCharSequence(chars, 0, length);
+	}
+	
+	@NonNull
+	@Override
+	public String getText() {
+		return getText(0, getLength());
+	}
+	
+	@NonNull
+	@Override
+	public String getText(int start, int length) {
+		if (wide != null)
+			return wide.getText(start, length);
+		
+		int index = findBlock(start);
+		Block<byte[]> block = blocks[index];
+		int local = start - starts[index];
+		if (local + length <= block.gapStart)
+			return new String(block.text, local, length, LATIN_1);
+		else if (local >= block.gapStart && local + length <= block.length())
+			return new String(block.text, local + block.gapLength, length, LATIN_1);
+		
+		char[] chars = new char[length];
+		getChars(start, length, chars, 0);
+		return new String(chars);
+	}
+	
+	@Override
+	public void getText(int start, int length, @NonNull Segment segment) {
+		if (wide != null) {
+			wide.getText(start, length, segment);
+			return;
+		}
+		
+		segment.array = length == 0 ? EMPTY_TEXT : segment.buffer(length);
+		getChars(start, length, segment.array, 0);
+		segment.offset = 0;
+		segment.count = length;
+	}
+	
+	@NonNull
+	@Override
+	public Content snapshot() {
+		if (wide != null)
+			return new CompactContent(wide.snapshot());
+		
+		return new CompactContent(this);
+	}
+	
+	@NonNull
+	@Override
+	byte[] newArray(int length) {
+		return new byte[length];
+	}
+	
+	@Override
+	char charAt(@NonNull byte[] text, int index) {
+		return (char) (text[index] & 0xff);
+	}
+	
+	@Override
+	void encode(@NonNull String text, @NonNull byte[] dest, int destOffset) {
+		for (int i = 0, len = text.length(); i < len; i++) {
+			dest[destOffset + i] = (byte) text.charAt(i);
+		}
+	}
+	
+	@Override
+	void encode(@NonNull char[] text, int offset, @NonNull byte[] dest, int destOffset, int count) {
+		for (int i = 0; i < count; i++) {
+			dest[destOffset + i] = (byte) text[offset + i];
+		}
+	}
+	
+	@Override
+	void decode(@NonNull byte[] text, int offset, @NonNull char[] dest, int destOffset, int count) {
+		inflate(text, offset, dest, destOffset, count);
+	}
+	
+	private void inflate() {
+		char[] chars = new char[length];
+		getChars(0, length, chars, 0);
+		wide = new ChunkedContent();
+		wide.set(chars, length);
+		reset(0);
+	}
+	
+	private static boolean isLatin1(char[] text, int offset, int length) {
+		for (int i = offset, end = offset + length; i < end; i++) {
+			if (text[i] > 0xff)
+				return false;
+		}
+		return true;
+	}
+	
+	private static boolean isLatin1(String text) {
+		for (int i = 0, end = text.length(); i < end; i++) {
+			if (text.charAt(i) > 0xff)
+				return false;
+		}
+		return true;
+	}
+	
+	private static void inflate(byte[] text, int offset, char[] dest, int destOffset, int count) {
+		for (int i = 0; i < count; i++) {
+			dest[destOffset + i] = (char) (text[offset + i] & 0xff);
+		}
+	}
+	
+	private static final class Latin1Sequence implements CharSequence {
+		private final byte[] text;
+		private final int gapStart;
+		private final int gapLength;
+		private final int start;
+		private final int length;
+		
+		Latin1Sequence(byte[] text, int gapStart, int gapLength, int start, int length) {
+			this.text = text;
+			this.gapStart = gapStart;
+			this.gapLength = gapLength;
+			this.start = start;
+			this.length = length;
+		}
+		
+		@Override
+		public int length() {
+			return length;
+		}
+		
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length)
+				throw new StringIndexOutOfBoundsException(index);
+			
+			int offset = start + index;
+			return (char) (text[offset < gapStart ? offset : offset + gapLength] & 0xff);
+		}
+		
+		@NonNull
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > length || start > end)
+				throw new StringIndexOutOfBoundsException(start + ":" + end);
+			
+			return new Latin1Sequence(text, gapStart, gapLength, this.start + start, end - start);
+		}
+		
+		@NonNull
+		@Override
+		public String toString() {
+			if (start + length <= gapStart)
+				return new String(text, start, length, LATIN_1);
+			else if (start >= gapStart)
+				return new String(text, start + gapLength, length, LATIN_1);
+			
+			char[] chars = new char[length];
+			int before = gapStart - start;
+			inflate(text, start, chars, 0, before);
+			inflate(text, gapStart + gapLength, chars, before, length - before);
+			return new String(chars);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+public interface Content {
+	
+	void set(@NonNull char[] text, int length);
+	
+	void insert(int start, @NonNull String text);
+	
+	void insert(int start, @NonNull CharSequence text);
+	
+	void insert(int start, @NonNull Segment segment);
+	
+	void delete(int start, int len);
+	
+	int getLength();
+	
+	char charAt(int offset);
+	
+	@NonNull
+	CharSequence getSequence(int start, int length);
+	
+	@NonNull
+	String getText();
+	
+	@NonNull
+	String getText(int start, int length);
+	
+	void getText(int start, int length, @NonNull Segment segment);
+	
+	@NonNull
+	Content snapshot();
+}
@@ -0,0 +1,103 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+public final class ContentSequence implements CharSequence {
+	private static final int WINDOW_SIZE = 4096;
+	
+	private final Content content;
+	private final char[] text;
+	private final int gapStart;
+	private final int gapLength;
+	private final int start;
+	private final int end;
+	private Window window;
+	
+	ContentSequence(@NonNull Content content, int start, int end) {
+		this(content, null, 0, 0, start, end);
+	}
+	
+	ContentSequence(@NonNull char[] text, int gapStart, int gapLength, int start, int end) {
+		this(null, text, gapStart, gapLength, start, end);
+	}
+	
+	private ContentSequence(Content content, char[] text, int gapStart, int gapLength, int start, int end) {
+		this.content = content;
+		this.text = text;
+		this.gapStart = gapStart;
+		this.gapLength = gapLength;
+		this.start = start;
+		this.end = end;
+	}
+	
+	@Override
+	public int length() {
+		return end - start;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start)
+			throw new StringIndexOutOfBoundsException(index);
+		
+		int offset = start + index;
+		if (text == null) {
+			Window window = this.window;
+			if (window == null || offset < window.start || offset >= window.end)
+				this.window = window = fetch(offset);
+			return window.array[window.offset + offset - window.start];
+		}
+		
+		return text[offset < gapStart ? offset : offset + gapLength];
+	}
+	
+	@NonNull
+	private Window fetch(int offset) {
+		int windowStart = Math.max(start, offset - WINDOW_SIZE / 4);
+		int windowEnd = Math.min(end, windowStart + WINDOW_SIZE);
+		Segment segment = new Segment();
+		content.getText(windowStart, windowEnd - windowStart, segment);
+		return new Window(segment.array, segment.offset, windowStart, windowEnd);
+	}
+	
+	@NonNull
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > this.end - this.start || start > end)
+			throw new StringIndexOutOfBoundsException(start + ":" + end);
+		
+		return new ContentSequence(content, text, gapStart, gapLength, this.start + start, this.start + end);
+	}
+	
+	@NonNull
+	@Override
+	public String toString() {
+		if (text == null)
+			return content.getText(start, end - start);
+		
+		char[] chars = new char[end - start];
+		if (end <= gapStart) {
+			System.arraycopy(text, start, chars, 0, chars.length);
+		} else if (start >= gapStart) {
+			System.arraycopy(text, start + gapLength, chars, 0, chars.length);
+		} else {
+			System.arraycopy(text, start, chars, 0, gapStart - start);
+			System.arraycopy(text, gapStart + gapLength, chars, gapStart - start, end - gapStart);
+		}
+		return new String(chars);
+	}
+	
+	private static final class Window {
+		final char[] array;
+		final int offset;
+		final int start;
+		final int end;
+		
+		Window(char[] array, int offset, int start, int end) {
+			this.array = array;
+			this.offset = offset;
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IOUtils;
+import com.faslyling.xdev.util.IntArrayList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class EditJournal implements Closeable {
+	private static final int MAGIC = 0x58444a31;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final long DEFAULT_SYNC_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+	
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final byte BATCH = 3;
+	private static final byte UNDO = 4;
+	private static final byte REDO = 5;
+	private static final byte BEGIN_COMPOUND = 6;
+	private static final byte END_COMPOUND = 7;
+	
+	private final File file;
+	private final Object fileLock = new Object();
+	private final CRC32 crc = new CRC32();
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private ByteBuffer pending = ByteBuffer.allocate(4096);
+	private ByteBuffer writing = ByteBuffer.allocate(4096);
+	private ByteBuffer header;
+	private volatile long syncInterval = DEFAULT_SYNC_INTERVAL;
+	private IOException failure;
+	private TextModel model;
+	private Thread flusher;
+	private int recordStart;
+	
+	public EditJournal(@NonNull File file) {
+		this.file = file;
+	}
+	
+	@NonNull
+	public File getFile() {
+		return file;
+	}
+	
+	public void setSyncInterval(long time, @NonNull TimeUnit unit) {
+		if (time <= 0)
+			throw new IllegalArgumentException("Sync interval must be positive: " + time);
+		
+		syncInterval = unit.toNanos(time);
+	}
+	
+	public boolean attach(@NonNull TextModel model) throws IOException {
+		synchronized (fileLock) {
+			if (this.model != null)
+				throw new IllegalStateException("Journal is already attached");
+			
+			raf = new RandomAccessFile(file, "rw");
+			channel = raf.getChannel();
+			boolean recovered;
+			try {
+				model.writeLock();
+				boolean editable = model.isEditable();
+				model.setEditable(true);
+				try {
+					recovered = replay(model);
+				} catch (IOException | RuntimeException e) {
+					IOUtils.safeClose(raf);
+					raf = null;
+					channel = null;
+					throw e;
+				} finally {
+					model.setEditable(editable);
+				}
+				this.model = model;
+				model.getUndoManager().setEditJournal(this);
+				sync();
+			} finally {
+				model.writeUnlock();
+			}
+			
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					loop();
+				}
+			}, "TextModel edit journal");
+			thread.setDaemon(true);
+			synchronized (this) {
+				flusher = thread;
+			}
+			thread.start();
+			return recovered;
+		}
+	}
+	
+	public void detach() throws IOException {
+		TextModel model;
+		Thread thread;
+		synchronized (fileLock) {
+			model = this.model;
+			if (model == null)
+				return;
+			
+			this.model = null;
+			synchronized (this) {
+				thread = flusher;
+				flusher = null;
+				notifyAll();
+			}
+		}
+		
+		try {
+			model.writeLock();
+			model.getUndoManager().setEditJournal(null);
+		} finally {
+			model.writeUnlock();
+		}
+		
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		try {
+			sync();
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			
+			synchronized (fileLock) {
+				IOUtils.safeClose(raf);
+				raf = null;
+				channel = null;
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		detach();
+	}
+	
+	public void sync() throws IOException {
+		synchronized (fileLock) {
+			ByteBuffer header;
+			synchronized (this) {
+				if (failure != null)
+					throw failure;
+				
+				header = this.header;
+				this.header = null;
+				ByteBuffer buffer = pending;
+				pending = writing;
+				writing = buffer;
+			}
+			
+			writing.flip();
+			try {
+				if (channel != null && (header != null || writing.hasRemaining())) {
+					if (header != null) {
+						channel.truncate(0);
+						write(header, 0);
+					}
+					write(writing, channel.size());
+					channel.force(false);
+				}
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+				}
+				throw e;
+			} finally {
+				writing.clear();
+			}
+		}
+	}
+	
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+	
+	private void loop() {
+		Thread thread = Thread.currentThread();
+		while (true) {
+			synchronized (this) {
+				long deadline = System.nanoTime() + syncInterval;
+				long remaining;
+				while (flusher == thread && (remaining = deadline - System.nanoTime()) > 0) {
+					try {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (flusher != thread)
+					return;
+			}
+			
+			try {
+				sync();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+	
+	void reset(int baseLength, @NonNull UndoManager undoManager) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(baseLength);
+			out.writeLong(0);
+			undoManager.write(out);
+			out.flush();
+		} catch (IOException e) {
+			synchronized (this) {
+				failure = e;
+			}
+			return;
+		}
+		
+		ByteBuffer header = ByteBuffer.wrap(bytes.toByteArray());
+		int length = header.limit() - HEADER_SIZE;
+		synchronized (this) {
+			crc.reset();
+			crc.update(header.array(), HEADER_SIZE, length);
+			header.putInt(8, length).putInt(12, (int) crc.getValue());
+			this.header = header;
+			pending.clear();
+		}
+	}
+	
+	synchronized void inserted(int offset, @NonNull CharSequence text) {
+		int length = text.length();
+		ByteBuffer buffer = beginRecord(9 + length * 2);
+		buffer.put(INSERT).putInt(offset).putInt(length);
+		for (int i = 0; i < length; i++) {
+			buffer.putChar(text.charAt(i));
+		}
+		endRecord();
+	}
+	
+	synchronized void removed(int offset, int length) {
+		beginRecord(9).put(DELETE).putInt(offset).putInt(length);
+		endRecord();
+	}
+	
+	synchronized void edited(@NonNull IntArrayList offsets, @NonNull String[] removed, @NonNull String[] inserted) {
+		int size = 5;
+		for (String text : inserted) {
+			size += 12 + text.length() * 2;
+		}
+		
+		ByteBuffer buffer = beginRecord(size);
+		buffer.put(BATCH).putInt(offsets.size());
+		for (int i = 0; i < offsets.size(); i++) {
+			String text = inserted[i];
+			buffer.putInt(offsets.get(i)).putInt(removed[i].length()).putInt(text.length());
+			for (int j = 0; j < text.length(); j++) {
+				buffer.putChar(text.charAt(j));
+			}
+		}
+		endRecord();
+	}
+	
+	synchronized void undone() {
+		beginRecord(1).put(UNDO);
+		endRecord();
+	}
+	
+	synchronized void redone() {
+		beginRecord(1).put(REDO);
+		endRecord();
+	}
+	
+	synchronized void compoundEditBegun() {
+		beginRecord(1).put(BEGIN_COMPOUND);
+		endRecord();
+	}
+	
+	synchronized void compoundEditEnded() {
+		beginRecord(1).put(END_COMPOUND);
+		endRecord();
+	}
+	
+	@NonNull
+	private ByteBuffer beginRecord(int size) {
+		if (pending.remaining() < RECORD_HEADER_SIZE + size) {
+			int capacity = Math.max(pending.capacity() * 2, pending.position() + RECORD_HEADER_SIZE + size);
+			ByteBuffer buffer = ByteBuffer.allocate(capacity);
+			pending.flip();
+			buffer.put(pending);
+			pending = buffer;
+		}
+		pending.putInt(size).putInt(0);
+		recordStart = pending.position();
+		return pending;
+	}
+	
+	private void endRecord() {
+		int length = pending.position() - recordStart;
+		crc.reset();
+		crc.update(pending.array(), recordStart, length);
+		pending.putInt(recordStart - RECORD_HEADER_SIZE, length);
+		pending.putInt(recordStart - 4, (int) crc.getValue());
+	}
+	
+	private boolean replay(TextModel model) throws IOException {
+		UndoManager undoManager = model.getUndoManager();
+		CRC32 crc = new CRC32();
+		long size = channel.size();
+		if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+			reset(model.getLength(), undoManager);
+			return false;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, buffer.position()) < 0)
+				break;
+		}
+		buffer.flip();
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != model.getLength()) {
+			reset(model.getLength(), undoManager);
+			return false;
+		}
+		
+		int stateLength = buffer.getInt();
+		int stateChecksum = buffer.getInt();
+		if (stateLength < 0 || stateLength > buffer.remaining()) {
+			reset(model.getLength(), undoManager);
+			return false;
+		}
+		
+		crc.reset();
+		crc.update(buffer.array(), HEADER_SIZE, stateLength);
+		if ((int) crc.getValue() != stateChecksum) {
+			reset(model.getLength(), undoManager);
+			return false;
+		}
+		
+		int limit = undoManager.getLimit();
+		long byteLimit = undoManager.getByteLimit();
+		undoManager.read(new DataInputStream(new ByteArrayInputStream(buffer.array(), HEADER_SIZE, stateLength)));
+		
+		int valid = HEADER_SIZE + stateLength;
+		buffer.position(valid);
+		while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (length <= 0 || length > buffer.remaining())
+				break;
+			
+			crc.reset();
+			crc.update(buffer.array(), buffer.position(), length);
+			if ((int) crc.getValue() != checksum)
+				break;
+			
+			int end = buffer.position() + length;
+			try {
+				apply(model, buffer);
+			} catch (RuntimeException e) {
+				break;
+			}
+			buffer.position(end);
+			valid = end;
+		}
+		channel.truncate(valid);
+		
+		while (model.isCompoundEdit()) {
+			model.endCompoundEdit();
+			compoundEditEnded();
+		}
+		undoManager.setLimit(limit);
+		undoManager.setByteLimit(byteLimit);
+		return true;
+	}
+	
+	private static void apply(TextModel model, ByteBuffer buffer) {
+		switch (buffer.get()) {
+			case INSERT:
+				int offset = buffer.getInt();
+				model.insert(offset, readString(buffer, buffer.getInt()));
+				break;
+			case DELETE:
+				model.delete(buffer.getInt(), buffer.getInt());
+				break;
+			case BATCH:
+				int count = buffer.getInt();
+				List<TextEdit> edits = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) {
+					int editOffset = buffer.getInt();
+					int editLength = buffer.getInt();
+					edits.add(new TextEdit(editOffset, editLength, readString(buffer, buffer.getInt())));
+				}
+				model.applyEdits(edits);
+				break;
+			case UNDO:
+				model.undo();
+				break;
+			case REDO:
+				model.redo();
+				break;
+			case BEGIN_COMPOUND:
+				model.beginCompoundEdit();
+				break;
+			case END_COMPOUND:
+				model.endCompoundEdit();
+				break;
+			default:
+				throw new IllegalStateException("Unknown journal record");
+		}
+	}
+	
+	@NonNull
+	private static String readString(ByteBuffer buffer, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = buffer.getChar();
+		}
+		return new String(chars);
+	}
+}
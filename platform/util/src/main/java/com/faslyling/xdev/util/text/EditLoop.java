@@ -0,0 +1,185 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+public class EditLoop {
+	private static final int MAX_BATCH_SIZE = 64;
+	
+	private final TextModel model;
+	private final LinkedBlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+	private volatile TextSnapshot snapshot;
+	private volatile Thread thread;
+	private Thread stopped;
+	
+	public EditLoop(@NonNull TextModel model) {
+		this.model = model;
+		snapshot = model.snapshot();
+	}
+	
+	public synchronized void start() {
+		if (thread != null)
+			return;
+		
+		final Thread previous = stopped;
+		stopped = null;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop(previous);
+			}
+		}, "TextModel edit loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	public synchronized void stop() {
+		if (thread == null)
+			return;
+		
+		stopped = thread;
+		thread = null;
+		stopped.interrupt();
+	}
+	
+	public boolean isRunning() {
+		return thread != null;
+	}
+	
+	@NonNull
+	public TextSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	@NonNull
+	public Future<Long> insert(int offset, @NonNull String text) {
+		return submit(Collections.singletonList(new TextEdit(offset, 0, text)));
+	}
+	
+	@NonNull
+	public Future<Long> delete(int offset, int length) {
+		return submit(Collections.singletonList(new TextEdit(offset, length, "")));
+	}
+	
+	@NonNull
+	public Future<Long> replace(int offset, int length, @NonNull String text) {
+		return submit(Collections.singletonList(new TextEdit(offset, length, text)));
+	}
+	
+	@NonNull
+	public Future<Long> submit(@NonNull List<TextEdit> edits) {
+		if (thread == null)
+			throw new RejectedExecutionException("Edit loop is not running");
+		
+		Command command = new Command(edits);
+		queue.add(command);
+		if (thread == null && queue.remove(command))
+			throw new RejectedExecutionException("Edit loop is not running");
+		return command.future;
+	}
+	
+	private void loop(Thread previous) {
+		Thread self = Thread.currentThread();
+		if (previous != null) {
+			try {
+				previous.join();
+			} catch (InterruptedException ignored) {
+			}
+		}
+		
+		List<Command> batch = new ArrayList<>(MAX_BATCH_SIZE);
+		try {
+			while (thread == self) {
+				try {
+					batch.add(queue.take());
+				} catch (InterruptedException e) {
+					continue;
+				}
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+				
+				try {
+					model.writeLock();
+					model.beginCompoundEdit();
+					for (Command command : batch) {
+						if (command.future.isCancelled())
+							continue;
+						
+						try {
+							model.applyEdits(command.edits);
+							command.version = model.getVersion();
+							command.applied = true;
+						} catch (RuntimeException e) {
+							command.error = e;
+						}
+					}
+				} finally {
+					model.endCompoundEdit();
+					model.writeUnlock();
+				}
+				
+				snapshot = model.snapshot();
+				for (Command command : batch) {
+					command.future.run();
+				}
+				batch.clear();
+			}
+		} catch (Throwable e) {
+			for (Command command : batch) {
+				if (!command.applied && command.error == null)
+					command.error = e;
+				command.future.run();
+			}
+			finish(self, e);
+			throw e;
+		}
+		finish(self, null);
+	}
+	
+	private synchronized void finish(Thread self, Throwable failure) {
+		if (thread == self) {
+			thread = null;
+			stopped = self;
+		} else if (thread != null) {
+			return;
+		}
+		
+		Command command;
+		while ((command = queue.poll()) != null) {
+			if (failure != null) {
+				command.error = failure;
+				command.future.run();
+			} else {
+				command.future.cancel(false);
+			}
+		}
+	}
+	
+	private static final class Command implements Callable<Long> {
+		final List<TextEdit> edits;
+		final FutureTask<Long> future = new FutureTask<>(this);
+		long version;
+		boolean applied;
+		Throwable error;
+		
+		Command(@NonNull List<TextEdit> edits) {
+			this.edits = edits;
+		}
+		
+		@Override
+		public Long call() throws Exception {
+			if (error instanceof Error)
+				throw (Error) error;
+			if (error != null)
+				throw (Exception) error;
+			return version;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FoldService {
+	private static final long DEFAULT_TIME_SLICE = TimeUnit.MILLISECONDS.toNanos(4);
+	
+	private final TextModel model;
+	private final Executor executor;
+	private final Executor listenerExecutor;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile long timeSlice = DEFAULT_TIME_SLICE;
+	private volatile boolean running;
+	
+	private final Runnable task = new Runnable() {
+		@Override
+		public void run() {
+			scheduled.set(false);
+			if (running && model.updateFoldLevels(timeSlice, listenerExecutor))
+				schedule();
+		}
+	};
+	
+	public FoldService(@NonNull TextModel model, @NonNull Executor executor, @NonNull Executor listenerExecutor) {
+		this.model = model;
+		this.executor = executor;
+		this.listenerExecutor = listenerExecutor;
+	}
+	
+	public void setTimeSlice(long time, @NonNull TimeUnit unit) {
+		if (time <= 0)
+			throw new IllegalArgumentException("Time slice must be positive: " + time);
+		
+		timeSlice = unit.toNanos(time);
+	}
+	
+	public void start() {
+		running = true;
+		model.setFoldService(this);
+		schedule();
+	}
+	
+	public void stop() {
+		running = false;
+		model.setFoldService(null);
+	}
+	
+	public boolean isRunning() {
+		return running;
+	}
+	
+	void schedule() {
+		if (running && scheduled.compareAndSet(false, true))
+			executor.execute(task);
+	}
+}
@@ -6,23 +6,46 @@ import androidx.annotation.NonNull;
 
 import com.faslyling.xdev.util.IntArrayList;
 
+import java.util.Arrays;
+
 class LineManager {
-	private int[] endOffsets;
-	private short[] foldLevels;
+	private static final int BLOCK_SIZE = 1024;
+	private static final int BLOCK_FILL = BLOCK_SIZE / 2;
+	
+	private Block[] blocks;
+	private int blockCount;
+	private int[] lengthTree;
+	private int[] lineTree;
 	private int lineCount;
-	private int gapLine;
-	private int gapWidth;
 	private int firstInvalidLineContext;
 	
 	private int firstInvalidFoldLevel;
 	
-	private int getLineOfOffsetLine = -1;
+	private Object owner = new Object();
 	
 	public LineManager() {
-		endOffsets = new int[1];
-		endOffsets[0] = 1;
-		foldLevels = new short[1];
+		Block block = new Block(owner, 1);
+		block.ends[0] = 1;
+		block.count = 1;
+		blocks = new Block[]{block};
+		blockCount = 1;
 		lineCount = 1;
+		rebuildTrees();
+	}
+	
+	private LineManager(@NonNull LineManager lineManager) {
+		blocks = Arrays.copyOf(lineManager.blocks, lineManager.blockCount);
+		blockCount = lineManager.blockCount;
+		lengthTree = lineManager.lengthTree.clone();
+		lineTree = lineManager.lineTree.clone();
+		lineCount = lineManager.lineCount;
+		firstInvalidFoldLevel = -1;
+	}
+	
+	@NonNull
+	public LineManager snapshot() {
+		owner = new Object();
+		return new LineManager(this);
 	}
 	
 	public int getLineCount() {
@@ -30,64 +53,42 @@ class LineManager {
 	}
 	
 	public int getLineOfOffset(int offset) {
-		if (getLineOfOffsetLine > 0 && getLineOfOffsetLine < lineCount) {
-			int s = getLineEndOffset(getLineOfOffsetLine - 1);
-			int e = getLineEndOffset(getLineOfOffsetLine);
-			if (offset >= s && offset < e)
-				return getLineOfOffsetLine;
-		}
+		int block = find(lengthTree, offset);
+		if (block == blockCount)
+			return lineCount;
 		
-		int start = 0;
-		int end = lineCount - 1;
-		
-		for (; ; ) {
-			switch (end - start) {
-				case 0:
-					if (getLineEndOffset(start) <= offset)
-						getLineOfOffsetLine = start + 1;
-					else
-						getLineOfOffsetLine = start;
-					return getLineOfOffsetLine;
-				case 1:
-					if (getLineEndOffset(start) <= offset) {
-						if (getLineEndOffset(end) <= offset)
-							getLineOfOffsetLine = end + 1;
-						else
-							getLineOfOffsetLine = end;
-					} else
-						getLineOfOffsetLine = start;
-					return getLineOfOffsetLine;
-				default:
-					int pivot = (end + start) / 2;
-					int value = getLineEndOffset(pivot);
-					if (value == offset) {
-						getLineOfOffsetLine = pivot + 1;
-						return getLineOfOffsetLine;
-					} else if (value < offset)
-						start = pivot + 1;
-					else
-						end = pivot - 1;
-					break;
-			}
+		Block b = blocks[block];
+		int local = offset - prefix(lengthTree, block);
+		int low = 0;
+		int high = b.count - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (b.ends[mid] <= local)
+				low = mid + 1;
+			else
+				high = mid;
 		}
+		return prefix(lineTree, block) + low;
 	}
 	
 	public int getLineEndOffset(int line) {
-		if (gapLine != -1 && line >= gapLine)
-			return endOffsets[line] + gapWidth;
-		else
-			return endOffsets[line];
+		int block = find(lineTree, line);
+		return prefix(lengthTree, block) + blocks[block].ends[line - prefix(lineTree, block)];
 	}
 	
 	public int getFoldLevel(int line) {
-		return foldLevels[line];
+		int block = find(lineTree, line);
+		return blocks[block].foldLevels[line - prefix(lineTree, block)];
 	}
 	
 	public void setFoldLevel(int line, int level) {
 		if (level > 0xffff)
 			level = 0xffff;
 		
-		foldLevels[line] = (short) level;
+		int block = find(lineTree, line);
+		int local = line - prefix(lineTree, block);
+		if (blocks[block].foldLevels[local] != (short) level)
+			writableBlock(block).foldLevels[local] = (short) level;
 	}
 	
 	public int getFirstInvalidFoldLevel() {
@@ -109,50 +110,60 @@ class LineManager {
 	}
 	
 	public void _contentInserted(@NonNull IntArrayList endOffsets) {
-		gapLine = -1;
-		gapWidth = 0;
 		firstInvalidLineContext = firstInvalidFoldLevel = 0;
+		owner = new Object();
 		lineCount = endOffsets.size();
-		this.endOffsets = endOffsets.toArray();
-		foldLevels = new short[lineCount];
+		blockCount = 0;
+		blocks = new Block[(lineCount + BLOCK_FILL - 1) / BLOCK_FILL];
 		
+		int blockStart = 0;
+		for (int line = 0; line < lineCount; line += BLOCK_FILL) {
+			Block block = new Block(owner, Math.min(BLOCK_FILL, lineCount - line));
+			block.count = block.ends.length;
+			for (int i = 0; i < block.count; i++) {
+				block.ends[i] = endOffsets.get(line + i) - blockStart;
+			}
+			blockStart += block.ends[block.count - 1];
+			blocks[blockCount++] = block;
+		}
+		rebuildTrees();
 	}
 	
 	public void contentInserted(int startLine, int offset, int length, int numLines, IntArrayList endOffsets) {
-		int endLine = startLine + numLines;
+		int index = find(lineTree, startLine);
+		Block block = writableBlock(index);
+		int local = startLine - prefix(lineTree, index);
+		int relative = offset - prefix(lengthTree, index);
 		
-		if (numLines > 0) {
-			lineCount += numLines;
-			
-			if (this.endOffsets.length <= lineCount) {
-				int[] endOffsetsN = new int[(lineCount + 1) * 2];
-				arraycopy(this.endOffsets, 0, endOffsetsN, 0,
-						this.endOffsets.length);
-				this.endOffsets = endOffsetsN;
+		if (block.count + numLines <= BLOCK_SIZE) {
+			block.ensureCapacity(block.count + numLines);
+			arraycopy(block.ends, local, block.ends, local + numLines, block.count - local);
+			arraycopy(block.foldLevels, local, block.foldLevels, local + numLines, block.count - local);
+			for (int i = 0; i < numLines; i++) {
+				block.ends[local + i] = relative + endOffsets.get(i);
+				block.foldLevels[local + i] = 0;
 			}
-			
-			if (foldLevels.length <= lineCount) {
-				short[] foldLevelsN = new short[(lineCount + 1) * 2];
-				arraycopy(foldLevels, 0, foldLevelsN, 0,
-						foldLevels.length);
-				foldLevels = foldLevelsN;
+			block.count += numLines;
+			for (int i = local + numLines; i < block.count; i++) {
+				block.ends[i] += length;
 			}
-			
-			
-			arraycopy(this.endOffsets, startLine,
-					this.endOffsets, endLine, lineCount - endLine);
-			arraycopy(foldLevels, startLine, foldLevels,
-					endLine, lineCount - endLine);
-			
-			if (startLine <= gapLine)
-				gapLine += numLines;
-			else if (gapLine != -1)
-				offset -= gapWidth;
-			
+			lineCount += numLines;
+			updateTrees(index, length, numLines);
+		} else {
+			int count = block.count + numLines;
+			int[] ends = new int[count];
+			short[] foldLevels = new short[count];
+			arraycopy(block.ends, 0, ends, 0, local);
+			arraycopy(block.foldLevels, 0, foldLevels, 0, local);
 			for (int i = 0; i < numLines; i++) {
-				this.endOffsets[startLine + i] = (offset + endOffsets.get(i));
-				foldLevels[startLine + i] = 0;
+				ends[local + i] = relative + endOffsets.get(i);
 			}
+			for (int i = local; i < block.count; i++) {
+				ends[i + numLines] = block.ends[i] + length;
+				foldLevels[i + numLines] = block.foldLevels[i];
+			}
+			lineCount += numLines;
+			replaceBlocks(index, index + 1, ends, foldLevels, count);
 		}
 		
 		if (firstInvalidLineContext == -1 || firstInvalidLineContext > startLine)
@@ -160,25 +171,44 @@ class LineManager {
 		
 		if (firstInvalidFoldLevel == -1 || firstInvalidFoldLevel > startLine)
 			firstInvalidFoldLevel = startLine;
-		moveGap(endLine, length);
 	}
 	
 	
 	public void contentRemoved(int startLine, int offset, int length, int numLines) {
 		int endLine = startLine + numLines;
+		int first = find(lineTree, startLine);
+		int firstLocal = startLine - prefix(lineTree, first);
+		int last = find(lineTree, endLine);
+		int lastLocal = endLine - prefix(lineTree, last);
 		
-		if (numLines > 0) {
-			if (startLine + numLines < gapLine)
-				gapLine -= numLines;
-			else if (startLine < gapLine)
-				gapLine = startLine;
-			
+		if (first == last) {
+			Block block = writableBlock(first);
+			arraycopy(block.ends, lastLocal, block.ends, firstLocal, block.count - lastLocal);
+			arraycopy(block.foldLevels, lastLocal, block.foldLevels, firstLocal, block.count - lastLocal);
+			block.count -= numLines;
+			for (int i = firstLocal; i < block.count; i++) {
+				block.ends[i] -= length;
+			}
 			lineCount -= numLines;
+			updateTrees(first, -length, -numLines);
 			
-			arraycopy(endOffsets, endLine, endOffsets,
-					startLine, lineCount - startLine);
-			arraycopy(foldLevels, endLine, foldLevels,
-					startLine, lineCount - startLine);
+			if (block.count < BLOCK_SIZE / 8 && blockCount > 1)
+				mergeBlock(first);
+		} else {
+			Block firstBlock = blocks[first];
+			Block lastBlock = blocks[last];
+			int shift = prefix(lengthTree, last) - prefix(lengthTree, first) - length;
+			int count = firstLocal + lastBlock.count - lastLocal;
+			int[] ends = new int[count];
+			short[] foldLevels = new short[count];
+			arraycopy(firstBlock.ends, 0, ends, 0, firstLocal);
+			arraycopy(firstBlock.foldLevels, 0, foldLevels, 0, firstLocal);
+			for (int i = lastLocal; i < lastBlock.count; i++) {
+				ends[firstLocal + i - lastLocal] = lastBlock.ends[i] + shift;
+				foldLevels[firstLocal + i - lastLocal] = lastBlock.foldLevels[i];
+			}
+			lineCount -= numLines;
+			replaceBlocks(first, last + 1, ends, foldLevels, count);
 		}
 		
 		if (firstInvalidLineContext == -1 || firstInvalidLineContext > startLine)
@@ -186,40 +216,139 @@ class LineManager {
 		
 		if (firstInvalidFoldLevel == -1 || firstInvalidFoldLevel > startLine)
 			firstInvalidFoldLevel = startLine;
-		moveGap(startLine, -length);
 	}
 	
-	private void setLineEndOffset(int line, int end) {
-		endOffsets[line] = end;
-	} //}}}
+	private void mergeBlock(int index) {
+		int left = index > 0 && (index == blockCount - 1
+				|| blocks[index - 1].count <= blocks[index + 1].count) ? index - 1 : index;
+		Block leftBlock = blocks[left];
+		Block rightBlock = blocks[left + 1];
+		int count = leftBlock.count + rightBlock.count;
+		if (count > BLOCK_SIZE)
+			return;
+		
+		int shift = leftBlock.ends[leftBlock.count - 1];
+		int[] ends = new int[count];
+		short[] foldLevels = new short[count];
+		arraycopy(leftBlock.ends, 0, ends, 0, leftBlock.count);
+		arraycopy(leftBlock.foldLevels, 0, foldLevels, 0, leftBlock.count);
+		for (int i = 0; i < rightBlock.count; i++) {
+			ends[leftBlock.count + i] = rightBlock.ends[i] + shift;
+			foldLevels[leftBlock.count + i] = rightBlock.foldLevels[i];
+		}
+		replaceBlocks(left, left + 2, ends, foldLevels, count);
+	}
 	
-	private void moveGap(int newGapLine, int newGapWidth) {
-		if (gapLine == -1)
-			gapWidth = newGapWidth;
-		else if (newGapLine == -1) {
-			if (gapWidth != 0) {
-				for (int i = gapLine; i < lineCount; i++)
-					setLineEndOffset(i, getLineEndOffset(i));
+	private void replaceBlocks(int from, int to, int[] ends, short[] foldLevels, int count) {
+		int newBlocks = (count + BLOCK_FILL - 1) / BLOCK_FILL;
+		int newBlockCount = blockCount - (to - from) + newBlocks;
+		Block[] blocksN = newBlockCount > blocks.length ? new Block[newBlockCount * 2] : blocks;
+		arraycopy(blocks, 0, blocksN, 0, from);
+		arraycopy(blocks, to, blocksN, from + newBlocks, blockCount - to);
+		for (int i = newBlockCount; i < blockCount; i++) {
+			blocksN[i] = null;
+		}
+		
+		int start = 0;
+		for (int i = 0; i < newBlocks; i++) {
+			Block block = new Block(owner, Math.min(BLOCK_FILL, count - start));
+			block.count = block.ends.length;
+			int base = start == 0 ? 0 : ends[start - 1];
+			for (int j = 0; j < block.count; j++) {
+				block.ends[j] = ends[start + j] - base;
 			}
-			
-			gapWidth = newGapWidth;
-		} else if (newGapLine < gapLine) {
-			if (gapWidth != 0) {
-				for (int i = newGapLine; i < gapLine; i++)
-					setLineEndOffset(i, getLineEndOffset(i) - gapWidth);
+			arraycopy(foldLevels, start, block.foldLevels, 0, block.count);
+			blocksN[from + i] = block;
+			start += block.count;
+		}
+		
+		blocks = blocksN;
+		blockCount = newBlockCount;
+		rebuildTrees();
+	}
+	
+	@NonNull
+	private Block writableBlock(int index) {
+		Block block = blocks[index];
+		if (block.owner != owner) {
+			block = new Block(owner, block);
+			blocks[index] = block;
+		}
+		return block;
+	}
+	
+	private void rebuildTrees() {
+		if (lengthTree == null || lengthTree.length <= blockCount) {
+			lengthTree = new int[blocks.length + 1];
+			lineTree = new int[blocks.length + 1];
+		} else {
+			Arrays.fill(lengthTree, 0);
+			Arrays.fill(lineTree, 0);
+		}
+		
+		for (int i = 1; i <= blockCount; i++) {
+			Block block = blocks[i - 1];
+			lengthTree[i] += block.ends[block.count - 1];
+			lineTree[i] += block.count;
+			int parent = i + (i & -i);
+			if (parent <= blockCount) {
+				lengthTree[parent] += lengthTree[i];
+				lineTree[parent] += lineTree[i];
 			}
-			gapWidth += newGapWidth;
-		} else{
-			if (gapWidth != 0) {
-				for (int i = gapLine; i < newGapLine; i++)
-					setLineEndOffset(i, getLineEndOffset(i));
+		}
+	}
+	
+	private void updateTrees(int block, int lengthDelta, int lineDelta) {
+		for (int i = block + 1; i <= blockCount; i += i & -i) {
+			lengthTree[i] += lengthDelta;
+			lineTree[i] += lineDelta;
+		}
+	}
+	
+	private static int prefix(int[] tree, int block) {
+		int sum = 0;
+		for (int i = block; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+	
+	private int find(int[] tree, int value) {
+		int pos = 0;
+		for (int step = Integer.highestOneBit(blockCount); step > 0; step >>= 1) {
+			if (pos + step <= blockCount && tree[pos + step] <= value) {
+				pos += step;
+				value -= tree[pos];
 			}
-			gapWidth += newGapWidth;
+		}
+		return pos;
+	}
+	
+	private static final class Block {
+		final Object owner;
+		int[] ends;
+		short[] foldLevels;
+		int count;
+		
+		Block(Object owner, int capacity) {
+			this.owner = owner;
+			ends = new int[capacity];
+			foldLevels = new short[capacity];
 		}
 		
-		if (newGapLine == lineCount)
-			gapLine = -1;
-		else
-			gapLine = newGapLine;
+		Block(Object owner, Block block) {
+			this.owner = owner;
+			ends = block.ends.clone();
+			foldLevels = block.foldLevels.clone();
+			count = block.count;
+		}
+		
+		void ensureCapacity(int capacity) {
+			if (capacity > ends.length) {
+				capacity = Math.min(Math.max(capacity, ends.length * 2), BLOCK_SIZE);
+				ends = Arrays.copyOf(ends, capacity);
+				foldLevels = Arrays.copyOf(foldLevels, capacity);
+			}
+		}
 	}
 }
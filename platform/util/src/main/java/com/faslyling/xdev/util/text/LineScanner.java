@@ -0,0 +1,136 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntArrayList;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+final class LineScanner {
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int PARALLEL_THRESHOLD = 4 * CHUNK_SIZE;
+	private static final int BUFFER_SIZE = 8 * 1024;
+	
+	private LineScanner() {
+	}
+	
+	@NonNull
+	static IntArrayList scan(@NonNull CharSequence text) {
+		if (text instanceof Segment) {
+			Segment segment = (Segment) text;
+			return scan(segment.array, segment.offset, segment.count);
+		}
+		
+		int length = text.length();
+		ForkJoinPool pool = length < PARALLEL_THRESHOLD ? null : TextUtils.getPool();
+		if (pool != null)
+			return scan(pool, text, null, 0, length);
+		
+		IntArrayList endOffsets = new IntArrayList();
+		char[] buffer = new char[Math.min(length, BUFFER_SIZE)];
+		for (int start = 0; start < length; start += buffer.length) {
+			int count = Math.min(buffer.length, length - start);
+			TextUtils.getChars(text, start, start + count, buffer, 0);
+			for (int i = 0; i < count; i++) {
+				if (buffer[i] == '\n')
+					endOffsets.add(start + i + 1);
+			}
+		}
+		return endOffsets;
+	}
+	
+	@NonNull
+	static IntArrayList scan(@NonNull char[] text, int offset, int length) {
+		ForkJoinPool pool = length < PARALLEL_THRESHOLD ? null : TextUtils.getPool();
+		if (pool != null)
+			return scan(pool, null, text, offset, length);
+		
+		IntArrayList endOffsets = new IntArrayList();
+		for (int i = 0; i < length; i++) {
+			if (text[offset + i] == '\n')
+				endOffsets.add(i + 1);
+		}
+		return endOffsets;
+	}
+	
+	static void scan(@NonNull char[] text, int offset, int length, int base, @NonNull IntArrayList endOffsets) {
+		for (int i = 0; i < length; i++) {
+			if (text[offset + i] == '\n')
+				endOffsets.add(base + i + 1);
+		}
+	}
+	
+	@NonNull
+	private static IntArrayList scan(@NonNull ForkJoinPool pool, CharSequence text, char[] array, int offset, int length) {
+		int[][] results = new int[(length + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+		pool.invoke(new ScanTask(text, array, offset, length, results, 0, results.length));
+		
+		int total = 0;
+		for (int[] result : results) {
+			total += result.length;
+		}
+		
+		IntArrayList endOffsets = new IntArrayList(total + 1);
+		for (int[] result : results) {
+			for (int endOffset : result) {
+				endOffsets.add(endOffset);
+			}
+		}
+		return endOffsets;
+	}
+	
+	private static final class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 2088452442651338350L;
+		
+		private final CharSequence text;
+		private final char[] array;
+		private final int offset;
+		private final int length;
+		private final int[][] results;
+		private final int from;
+		private final int to;
+		
+		ScanTask(CharSequence text, char[] array, int offset, int length, int[][] results, int from, int to) {
+			this.text = text;
+			this.array = array;
+			this.offset = offset;
+			this.length = length;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ScanTask(text, array, offset, length, results, from, mid),
+						new ScanTask(text, array, offset, length, results, mid, to));
+				return;
+			}
+			
+			int start = from * CHUNK_SIZE;
+			int count = Math.min(CHUNK_SIZE, length - start);
+			char[] chars = array;
+			int base = offset + start;
+			if (chars == null) {
+				chars = new char[count];
+				TextUtils.getChars(text, start, start + count, chars, 0);
+				base = 0;
+			}
+			
+			int[] result = new int[16];
+			int size = 0;
+			for (int i = 0; i < count; i++) {
+				if (chars[base + i] == '\n') {
+					if (size == result.length)
+						result = Arrays.copyOf(result, size * 2);
+					result[size++] = start + i + 1;
+				}
+			}
+			results[from] = Arrays.copyOf(result, size);
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package com.faslyling.xdev.util.text;
+
+import static java.lang.System.arraycopy;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntArrayList;
+import com.faslyling.xdev.util.IOUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+public class MappedContent implements Content, Closeable {
+	private static final int PAGE_SIZE = 64 * 1024;
+	private static final int CACHE_SIZE = 8;
+	
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final CharsetDecoder decoder;
+	private final IntArrayList lineEndOffsets = new IntArrayList();
+	private int[] pageByteStarts;
+	private int[] pageCharStarts;
+	private int pageCount;
+	private int length;
+	
+	private final int[] cachedPages = new int[CACHE_SIZE];
+	private final char[][] cachedChars = new char[CACHE_SIZE][];
+	private int nextCacheSlot;
+	
+	public MappedContent(@NonNull File file, @NonNull Charset charset) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = this.file.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("File is too large to be mapped: " + file);
+			
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			buildIndex();
+		} catch (IOException | RuntimeException e) {
+			IOUtils.safeClose(this.file);
+			throw e;
+		}
+	}
+	
+	private void buildIndex() {
+		int byteCount = buffer.limit();
+		int capacity = byteCount / PAGE_SIZE + 2;
+		pageByteStarts = new int[capacity];
+		pageCharStarts = new int[capacity];
+		
+		ByteBuffer in = buffer.duplicate();
+		CharBuffer out = CharBuffer.allocate((int) (PAGE_SIZE * decoder.maxCharsPerByte()) + 2);
+		decoder.reset();
+		
+		int charStart = 0;
+		while (true) {
+			int byteStart = in.position();
+			boolean last = byteCount - byteStart <= PAGE_SIZE;
+			in.limit(last ? byteCount : byteStart + PAGE_SIZE);
+			out.clear();
+			decoder.decode(in, out, last);
+			if (last)
+				decoder.flush(out);
+			
+			int count = out.position();
+			if (count > 0 || last) {
+				addPage(byteStart, charStart);
+				char[] chars = out.array();
+				for (int i = 0; i < count; i++) {
+					if (chars[i] == '\n')
+						lineEndOffsets.add(charStart + i + 1);
+				}
+				charStart += count;
+			}
+			
+			if (last)
+				break;
+		}
+		
+		length = charStart;
+		pageByteStarts[pageCount] = byteCount;
+		pageCharStarts[pageCount] = length;
+		lineEndOffsets.add(length + 1);
+		
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			cachedPages[i] = -1;
+		}
+	}
+	
+	private void addPage(int byteStart, int charStart) {
+		if (pageCount + 1 >= pageByteStarts.length) {
+			int[] byteStartsN = new int[pageByteStarts.length * 2];
+			int[] charStartsN = new int[pageCharStarts.length * 2];
+			arraycopy(pageByteStarts, 0, byteStartsN, 0, pageCount);
+			arraycopy(pageCharStarts, 0, charStartsN, 0, pageCount);
+			pageByteStarts = byteStartsN;
+			pageCharStarts = charStartsN;
+		}
+		pageByteStarts[pageCount] = byteStart;
+		pageCharStarts[pageCount] = charStart;
+		pageCount++;
+	}
+	
+	@NonNull
+	IntArrayList getLineEndOffsets() {
+		return lineEndOffsets;
+	}
+	
+	@Override
+	public void set(@NonNull char[] text, int length) {
+		throw new UnsupportedOperationException("Mapped content is read-only");
+	}
+	
+	@Override
+	public void insert(int start, @NonNull String text) {
+		throw new UnsupportedOperationException("Mapped content is read-only");
+	}
+	
+	@Override
+	public void insert(int start, @NonNull CharSequence text) {
+		throw new UnsupportedOperationException("Mapped content is read-only");
+	}
+	
+	@Override
+	public void insert(int start, @NonNull Segment segment) {
+		throw new UnsupportedOperationException("Mapped content is read-only");
+	}
+	
+	@Override
+	public void delete(int start, int len) {
+		throw new UnsupportedOperationException("Mapped content is read-only");
+	}
+	
+	@Override
+	public int getLength() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int offset) {
+		int page = findPage(offset);
+		return getPage(page)[offset - pageCharStarts[page]];
+	}
+	
+	@NonNull
+	@Override
+	public CharSequence getSequence(int start, int length) {
+		Segment segment = new Segment();
+		getText(start, length, segment);
+		return new TextCharSequence(segment.array, segment.offset, segment.count);
+	}
+	
+	@NonNull
+	@Override
+	public String getText() {
+		return getText(0, length);
+	}
+	
+	@NonNull
+	@Override
+	public String getText(int start, int length) {
+		Segment segment = new Segment();
+		getText(start, length, segment);
+		return segment.toString();
+	}
+	
+	@Override
+	public void getText(int start, int length, @NonNull Segment segment) {
+		int page = findPage(start);
+		int end = start + length;
+		if (end <= pageCharStarts[page + 1]) {
+			segment.array = getPage(page);
+			segment.offset = start - pageCharStarts[page];
+			segment.count = length;
+			return;
+		}
+		
+		char[] result = new char[length];
+		int pos = start;
+		while (pos < end) {
+			int pageEnd = Math.min(pageCharStarts[page + 1], end);
+			arraycopy(getPage(page), pos - pageCharStarts[page], result, pos - start, pageEnd - pos);
+			pos = pageEnd;
+			page++;
+		}
+		segment.array = result;
+		segment.offset = 0;
+		segment.count = length;
+	}
+	
+	@NonNull
+	@Override
+	public Content snapshot() {
+		return this;
+	}
+	
+	private int findPage(int offset) {
+		int low = 0;
+		int high = pageCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (pageCharStarts[mid] <= offset)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+	
+	@NonNull
+	private synchronized char[] getPage(int page) {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			if (cachedPages[i] == page)
+				return cachedChars[i];
+		}
+		
+		char[] chars = new char[pageCharStarts[page + 1] - pageCharStarts[page]];
+		ByteBuffer in = buffer.duplicate();
+		in.limit(pageByteStarts[page + 1]);
+		in.position(pageByteStarts[page]);
+		CharBuffer out = CharBuffer.wrap(chars);
+		boolean last = page == pageCount - 1;
+		decoder.reset();
+		CoderResult result = decoder.decode(in, out, last);
+		if (last)
+			decoder.flush(out);
+		assert !result.isError() && !out.hasRemaining();
+		
+		int slot = nextCacheSlot;
+		nextCacheSlot = (nextCacheSlot + 1) % CACHE_SIZE;
+		cachedPages[slot] = page;
+		cachedChars[slot] = chars;
+		return chars;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
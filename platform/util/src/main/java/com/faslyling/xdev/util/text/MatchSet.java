@@ -0,0 +1,258 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntPair;
+import com.faslyling.xdev.util.LongArrayList;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MatchSet implements ModelListener {
+	private final TextModel model;
+	private final Pattern pattern;
+	private final int maxSpan;
+	private final LongArrayList matches = new LongArrayList();
+	private int shiftIndex;
+	private int shift;
+	private Matcher matcher;
+	private boolean attached;
+	
+	public MatchSet(@NonNull TextModel model, @NonNull String literal, boolean ignoreCase) {
+		this(model, Pattern.compile(literal, ignoreCase ? Pattern.LITERAL | Pattern.CASE_INSENSITIVE
+				| Pattern.UNICODE_CASE : Pattern.LITERAL), literal.length());
+	}
+	
+	public MatchSet(@NonNull TextModel model, @NonNull Pattern pattern, int maxSpan) {
+		if (maxSpan < 0)
+			throw new IllegalArgumentException("maxSpan < 0");
+		
+		this.model = model;
+		this.pattern = pattern;
+		this.maxSpan = maxSpan;
+	}
+	
+	@NonNull
+	public Pattern getPattern() {
+		return pattern;
+	}
+	
+	public void attach() {
+		try {
+			model.writeLock();
+			if (attached)
+				return;
+			
+			research();
+			model.addModelListener(this);
+			attached = true;
+		} finally {
+			model.writeUnlock();
+		}
+	}
+	
+	public void detach() {
+		try {
+			model.writeLock();
+			model.removeModelListener(this);
+			attached = false;
+			clear();
+			matcher = null;
+		} finally {
+			model.writeUnlock();
+		}
+	}
+	
+	public int getMatchCount() {
+		try {
+			model.readLock();
+			return matches.size();
+		} finally {
+			model.readUnlock();
+		}
+	}
+	
+	@NonNull
+	public LongArrayList getMatches() {
+		try {
+			model.readLock();
+			return toOffsetLengthPairs(0, matches.size());
+		} finally {
+			model.readUnlock();
+		}
+	}
+	
+	@NonNull
+	public LongArrayList getMatches(int startLine, int endLine) {
+		try {
+			model.readLock();
+			int start = model.getLineStartOffset(startLine);
+			int end = model.getLineEndOffset(endLine);
+			int from = indexOf(start);
+			if (from > 0 && IntPair.second(get(from - 1)) > start)
+				from--;
+			return toOffsetLengthPairs(from, indexOf(end));
+		} finally {
+			model.readUnlock();
+		}
+	}
+	
+	@Override
+	public void textSet(@NonNull TextModel model) {
+		research();
+	}
+	
+	@Override
+	public void textPreInserted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+	}
+	
+	@Override
+	public void textInserted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		textChanged(start, 0, length);
+	}
+	
+	@Override
+	public void textPreDeleted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+	}
+	
+	@Override
+	public void textDeleted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		textChanged(start, length, 0);
+	}
+	
+	@Override
+	public void transactionComplete(@NonNull TextModel model) {
+	}
+	
+	@Override
+	public void foldLevelChanged(@NonNull TextModel model, int startLine, int endLine) {
+	}
+	
+	@Override
+	public void foldHandlerChanged(@NonNull TextModel model) {
+	}
+	
+	private void research() {
+		clear();
+		repair(0, 0, model.getLength() + 1);
+	}
+	
+	private void textChanged(int start, int oldLength, int newLength) {
+		int from = Math.max(start - maxSpan, 0);
+		int first = indexOf(from);
+		remove(first, indexOf(start + oldLength));
+		
+		moveShift(first);
+		shift += newLength - oldLength;
+		repair(first, from, start + newLength + maxSpan);
+	}
+	
+	private void repair(int index, int from, int to) {
+		int length = model.getLength();
+		if (index > 0) {
+			long previous = get(index - 1);
+			int previousEnd = IntPair.second(previous);
+			if (previousEnd >= from)
+				from = IntPair.first(previous) == previousEnd ? previousEnd + 1 : previousEnd;
+		}
+		
+		int position = from;
+		if (from <= length) {
+			if (matcher == null) {
+				matcher = pattern.matcher(model.getContentSequence());
+				matcher.useTransparentBounds(true);
+				matcher.useAnchoringBounds(false);
+			} else {
+				matcher.reset(model.getContentSequence());
+			}
+			matcher.region(from, (int) Math.min(length, (long) to + maxSpan));
+			
+			while (matcher.find()) {
+				int start = matcher.start();
+				int end = matcher.end();
+				if (start >= to)
+					break;
+				
+				long match = IntPair.of(start, end);
+				while (index < matches.size()) {
+					long existing = get(index);
+					int existingStart = IntPair.first(existing);
+					if (existing == match || existingStart >= end && existingStart > start)
+						break;
+					remove(index, index + 1);
+				}
+				
+				if (index < matches.size() && get(index) == match)
+					index++;
+				else
+					add(index++, match);
+				position = start == end ? end + 1 : end;
+			}
+		}
+		
+		int last = index;
+		int valid = Math.max(to, position);
+		while (last < matches.size() && IntPair.first(get(last)) < valid) {
+			last++;
+		}
+		remove(index, last);
+	}
+	
+	private int indexOf(int offset) {
+		int low = 0;
+		int high = matches.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (IntPair.first(get(mid)) < offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	private long get(int index) {
+		long match = matches.get(index);
+		if (index < shiftIndex || shift == 0)
+			return match;
+		
+		return IntPair.of(IntPair.first(match) + shift, IntPair.second(match) + shift);
+	}
+	
+	private void add(int index, long match) {
+		moveShift(index);
+		matches.add(index, IntPair.of(IntPair.first(match) - shift, IntPair.second(match) - shift));
+	}
+	
+	private void remove(int from, int to) {
+		moveShift(from);
+		matches.removeRange(from, to);
+	}
+	
+	private void clear() {
+		matches.removeRange(0, matches.size());
+		shiftIndex = shift = 0;
+	}
+	
+	private void moveShift(int index) {
+		for (int i = index; i < shiftIndex; i++) {
+			long match = matches.get(i);
+			matches.set(i, IntPair.of(IntPair.first(match) - shift, IntPair.second(match) - shift));
+		}
+		for (int i = shiftIndex; i < index; i++) {
+			long match = matches.get(i);
+			matches.set(i, IntPair.of(IntPair.first(match) + shift, IntPair.second(match) + shift));
+		}
+		shiftIndex = index;
+	}
+	
+	@NonNull
+	private LongArrayList toOffsetLengthPairs(int from, int to) {
+		LongArrayList result = new LongArrayList(Math.max(to - from, 1));
+		for (int i = from; i < to; i++) {
+			long match = get(i);
+			result.add(IntPair.of(IntPair.first(match), IntPair.second(match) - IntPair.first(match)));
+		}
+		return result;
+	}
+}
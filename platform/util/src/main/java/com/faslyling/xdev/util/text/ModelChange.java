@@ -0,0 +1,58 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntPair;
+import com.faslyling.xdev.util.LongArrayList;
+
+public final class ModelChange {
+	private final long version;
+	private final boolean textSet;
+	private final LongArrayList ranges;
+	private final int firstMovedLine;
+	
+	ModelChange(long version, boolean textSet, @NonNull LongArrayList ranges, int firstMovedLine) {
+		this.version = version;
+		this.textSet = textSet;
+		this.ranges = ranges;
+		this.firstMovedLine = firstMovedLine;
+	}
+	
+	public long getVersion() {
+		return version;
+	}
+	
+	public boolean isTextSet() {
+		return textSet;
+	}
+	
+	public int getFirstMovedLine() {
+		return firstMovedLine;
+	}
+	
+	public int getRangeCount() {
+		return ranges.size();
+	}
+	
+	public int getStartLine(int index) {
+		return IntPair.first(ranges.get(index));
+	}
+	
+	public int getEndLine(int index) {
+		return IntPair.second(ranges.get(index));
+	}
+	
+	@NonNull
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("ModelChange{version=").append(version);
+		if (textSet)
+			sb.append(", textSet");
+		if (firstMovedLine != -1)
+			sb.append(", moved=").append(firstMovedLine);
+		for (int i = 0; i < ranges.size(); i++) {
+			sb.append(", ").append(getStartLine(i)).append('-').append(getEndLine(i));
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,11 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import java.util.EventListener;
+
+public interface ModelChangeListener extends EventListener {
+	
+	void modelChanged(@NonNull TextModel model, @NonNull ModelChange change);
+	
+}
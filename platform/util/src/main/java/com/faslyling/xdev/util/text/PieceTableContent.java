@@ -0,0 +1,480 @@
+package com.faslyling.xdev.util.text;
+
+import static java.lang.System.arraycopy;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+public class PieceTableContent implements Content {
+	private static final char[] EMPTY_TEXT = new char[0];
+	private static final int ADD_BUFFER_SIZE = 16 * 1024;
+	private static final int BLOCK_SIZE = 256;
+	private static final int BLOCK_FILL = BLOCK_SIZE / 2;
+	
+	private char[] added = EMPTY_TEXT;
+	private int addedLength;
+	
+	private Block[] blocks;
+	private int blockCount;
+	private int[] lengthTree;
+	private int pieceCount;
+	private int length;
+	
+	private Object owner = new Object();
+	
+	public PieceTableContent() {
+		set(EMPTY_TEXT, 0);
+	}
+	
+	public PieceTableContent(@NonNull char[] original, int length) {
+		set(original, length);
+	}
+	
+	private PieceTableContent(@NonNull PieceTableContent content) {
+		blocks = Arrays.copyOf(content.blocks, content.blockCount);
+		blockCount = content.blockCount;
+		lengthTree = content.lengthTree.clone();
+		pieceCount = content.pieceCount;
+		length = content.length;
+	}
+	
+	@Override
+	public void set(@NonNull char[] text, int length) {
+		assert text.length >= length;
+		added = EMPTY_TEXT;
+		addedLength = 0;
+		owner = new Object();
+		Block block = new Block(owner, 4);
+		if (length > 0)
+			block.insert(0, text, 0, length);
+		blocks = new Block[]{block};
+		blockCount = 1;
+		pieceCount = block.count;
+		this.length = length;
+		rebuildTree();
+	}
+	
+	@Override
+	public void insert(int start, @NonNull String text) {
+		int len = text.length();
+		if (len == 0)
+			return;
+		int addStart = prepareAdded(len);
+		text.getChars(0, len, added, addStart);
+		insertPiece(start, addStart, len);
+	}
+	
+	@Override
+	public void insert(int start, @NonNull CharSequence text) {
+		int len = text.length();
+		if (len == 0)
+			return;
+		int addStart = prepareAdded(len);
+		TextUtils.getChars(text, 0, len, added, addStart);
+		insertPiece(start, addStart, len);
+	}
+	
+	@Override
+	public void insert(int start, @NonNull Segment segment) {
+		if (segment.count == 0)
+			return;
+		int addStart = prepareAdded(segment.count);
+		arraycopy(segment.array, segment.offset, added, addStart, segment.count);
+		insertPiece(start, addStart, segment.count);
+	}
+	
+	@Override
+	public void delete(int start, int len) {
+		if (len == 0)
+			return;
+		
+		int first = findBlock(start);
+		int index = first;
+		int local = start - prefix(index);
+		int remaining = len;
+		boolean empty = false;
+		while (remaining > 0) {
+			Block block = writableBlock(index);
+			int count = Math.min(block.length() - local, remaining);
+			pieceCount -= block.count;
+			block.delete(local, count);
+			pieceCount += block.count;
+			updateTree(index, -count);
+			empty |= block.count == 0;
+			remaining -= count;
+			local = 0;
+			index++;
+		}
+		length -= len;
+		
+		if (empty) {
+			removeEmptyBlocks(first, index);
+			index = Math.min(first, blockCount - 1);
+		} else {
+			index = first;
+		}
+		if (blocks[index].count < BLOCK_SIZE / 8 && blockCount > 1)
+			mergeBlock(index);
+	}
+	
+	@Override
+	public int getLength() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int offset) {
+		int index = findBlock(offset);
+		Block block = blocks[index];
+		int local = offset - prefix(index);
+		int piece = block.find(local);
+		return block.buffers[piece][block.starts[piece] + local - block.pieceStart(piece)];
+	}
+	
+	@NonNull
+	@Override
+	public Content snapshot() {
+		owner = new Object();
+		return new PieceTableContent(this);
+	}
+	
+	public int getPieceCount() {
+		return pieceCount;
+	}
+	
+	@NonNull
+	@Override
+	public CharSequence getSequence(int start, int length) {
+		Segment segment = new Segment();
+		getText(start, length, segment);
+		return new TextCharSequence(segment.array, segment.offset, segment.count);
+	}
+	
+	@NonNull
+	@Override
+	public String getText() {
+		return getText(0, length);
+	}
+	
+	@NonNull
+	@Override
+	public String getText(int start, int length) {
+		if (length == 0)
+			return "";
+		
+		int index = findBlock(start);
+		Block block = blocks[index];
+		int local = start - prefix(index);
+		int piece = block.find(local);
+		if (local + length <= block.ends[piece])
+			return new String(block.buffers[piece], block.starts[piece] + local - block.pieceStart(piece), length);
+		
+		char[] result = new char[length];
+		copyChars(index, local, length, result, 0);
+		return new String(result);
+	}
+	
+	@Override
+	public void getText(int start, int length, @NonNull Segment segment) {
+		if (length == 0) {
+			segment.array = EMPTY_TEXT;
+			segment.offset = 0;
+			segment.count = 0;
+			return;
+		}
+		
+		int index = findBlock(start);
+		Block block = blocks[index];
+		int local = start - prefix(index);
+		int piece = block.find(local);
+		if (local + length <= block.ends[piece]) {
+			segment.array = block.buffers[piece];
+			segment.offset = block.starts[piece] + local - block.pieceStart(piece);
+			segment.count = length;
+		} else {
+			segment.array = new char[length];
+			copyChars(index, local, length, segment.array, 0);
+			segment.offset = 0;
+			segment.count = length;
+		}
+	}
+	
+	private void copyChars(int index, int local, int length, char[] dest, int destOffset) {
+		Block block = blocks[index];
+		int piece = block.find(local);
+		int end = destOffset + length;
+		while (destOffset < end) {
+			if (piece == block.count) {
+				block = blocks[++index];
+				piece = 0;
+				local = 0;
+			}
+			
+			int pieceStart = block.pieceStart(piece);
+			int count = Math.min(block.ends[piece] - local, end - destOffset);
+			arraycopy(block.buffers[piece], block.starts[piece] + local - pieceStart, dest, destOffset, count);
+			destOffset += count;
+			local += count;
+			piece++;
+		}
+	}
+	
+	private int prepareAdded(int len) {
+		if (addedLength + len > added.length) {
+			added = new char[Math.max(len, ADD_BUFFER_SIZE)];
+			addedLength = 0;
+		}
+		int addStart = addedLength;
+		addedLength += len;
+		return addStart;
+	}
+	
+	private void insertPiece(int start, int addStart, int len) {
+		int index = findBlock(start);
+		Block block = writableBlock(index);
+		int local = start - prefix(index);
+		int count = block.count;
+		int piece = block.split(local);
+		if (piece > 0 && block.buffers[piece - 1] == added
+				&& block.starts[piece - 1] + block.ends[piece - 1] - block.pieceStart(piece - 1) == addStart) {
+			block.extend(piece - 1, len);
+		} else {
+			block.insert(piece, added, addStart, len);
+		}
+		pieceCount += block.count - count;
+		updateTree(index, len);
+		length += len;
+		
+		if (block.count > BLOCK_SIZE)
+			splitBlock(index);
+	}
+	
+	private void splitBlock(int index) {
+		Block block = blocks[index];
+		int newBlocks = (block.count + BLOCK_FILL - 1) / BLOCK_FILL;
+		Block[] replacement = new Block[newBlocks];
+		for (int i = 0; i < newBlocks; i++) {
+			int from = i * BLOCK_FILL;
+			replacement[i] = block.copy(owner, from, Math.min(from + BLOCK_FILL, block.count));
+		}
+		replaceBlocks(index, index + 1, replacement);
+	}
+	
+	private void mergeBlock(int index) {
+		int left = index > 0 && (index == blockCount - 1
+				|| blocks[index - 1].count <= blocks[index + 1].count) ? index - 1 : index;
+		Block leftBlock = blocks[left];
+		Block rightBlock = blocks[left + 1];
+		if (leftBlock.count + rightBlock.count > BLOCK_SIZE)
+			return;
+		
+		Block block = leftBlock.copy(owner, 0, leftBlock.count);
+		block.append(rightBlock);
+		replaceBlocks(left, left + 2, new Block[]{block});
+	}
+	
+	private void removeEmptyBlocks(int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (blocks[i].count != 0 || count + blockCount - (to - from) == 0)
+				count++;
+		}
+		
+		Block[] replacement = new Block[count];
+		count = 0;
+		for (int i = from; i < to; i++) {
+			if (blocks[i].count != 0 || count + blockCount - (to - from) == 0)
+				replacement[count++] = blocks[i];
+		}
+		replaceBlocks(from, to, replacement);
+	}
+	
+	private void replaceBlocks(int from, int to, Block[] replacement) {
+		int newBlockCount = blockCount - (to - from) + replacement.length;
+		Block[] blocksN = newBlockCount > blocks.length ? new Block[newBlockCount * 2] : blocks;
+		arraycopy(blocks, 0, blocksN, 0, from);
+		arraycopy(blocks, to, blocksN, from + replacement.length, blockCount - to);
+		arraycopy(replacement, 0, blocksN, from, replacement.length);
+		for (int i = newBlockCount; i < blockCount; i++) {
+			blocksN[i] = null;
+		}
+		
+		blocks = blocksN;
+		blockCount = newBlockCount;
+		rebuildTree();
+	}
+	
+	@NonNull
+	private Block writableBlock(int index) {
+		Block block = blocks[index];
+		if (block.owner != owner) {
+			block = new Block(owner, block);
+			blocks[index] = block;
+		}
+		return block;
+	}
+	
+	private int findBlock(int offset) {
+		int pos = 0;
+		for (int step = Integer.highestOneBit(blockCount); step > 0; step >>= 1) {
+			if (pos + step <= blockCount && lengthTree[pos + step] <= offset) {
+				pos += step;
+				offset -= lengthTree[pos];
+			}
+		}
+		return Math.min(pos, blockCount - 1);
+	}
+	
+	private int prefix(int block) {
+		int sum = 0;
+		for (int i = block; i > 0; i -= i & -i) {
+			sum += lengthTree[i];
+		}
+		return sum;
+	}
+	
+	private void updateTree(int block, int delta) {
+		for (int i = block + 1; i <= blockCount; i += i & -i) {
+			lengthTree[i] += delta;
+		}
+	}
+	
+	private void rebuildTree() {
+		if (lengthTree == null || lengthTree.length <= blockCount)
+			lengthTree = new int[blocks.length + 1];
+		else
+			Arrays.fill(lengthTree, 0);
+		
+		for (int i = 1; i <= blockCount; i++) {
+			lengthTree[i] += blocks[i - 1].length();
+			int parent = i + (i & -i);
+			if (parent <= blockCount)
+				lengthTree[parent] += lengthTree[i];
+		}
+	}
+	
+	private static final class Block {
+		final Object owner;
+		char[][] buffers;
+		int[] starts;
+		int[] ends;
+		int count;
+		
+		Block(Object owner, int capacity) {
+			this.owner = owner;
+			buffers = new char[capacity][];
+			starts = new int[capacity];
+			ends = new int[capacity];
+		}
+		
+		Block(Object owner, Block block) {
+			this.owner = owner;
+			buffers = block.buffers.clone();
+			starts = block.starts.clone();
+			ends = block.ends.clone();
+			count = block.count;
+		}
+		
+		int length() {
+			return count == 0 ? 0 : ends[count - 1];
+		}
+		
+		int pieceStart(int piece) {
+			return piece == 0 ? 0 : ends[piece - 1];
+		}
+		
+		int find(int local) {
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (ends[mid] <= local)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+		
+		int split(int local) {
+			int piece = find(local);
+			int pieceStart = pieceStart(piece);
+			if (piece == count || pieceStart == local)
+				return piece;
+			
+			insert(piece + 1, buffers[piece], starts[piece] + local - pieceStart, 0);
+			ends[piece + 1] = ends[piece];
+			ends[piece] = local;
+			return piece + 1;
+		}
+		
+		void insert(int piece, char[] buffer, int start, int len) {
+			ensureCapacity(count + 1);
+			arraycopy(buffers, piece, buffers, piece + 1, count - piece);
+			arraycopy(starts, piece, starts, piece + 1, count - piece);
+			arraycopy(ends, piece, ends, piece + 1, count - piece);
+			count++;
+			buffers[piece] = buffer;
+			starts[piece] = start;
+			ends[piece] = pieceStart(piece) + len;
+			for (int i = piece + 1; i < count; i++) {
+				ends[i] += len;
+			}
+		}
+		
+		void extend(int piece, int len) {
+			for (int i = piece; i < count; i++) {
+				ends[i] += len;
+			}
+		}
+		
+		void delete(int local, int len) {
+			int first = split(local);
+			int last = split(local + len);
+			arraycopy(buffers, last, buffers, first, count - last);
+			arraycopy(starts, last, starts, first, count - last);
+			arraycopy(ends, last, ends, first, count - last);
+			for (int i = count - (last - first); i < count; i++) {
+				buffers[i] = null;
+			}
+			count -= last - first;
+			for (int i = first; i < count; i++) {
+				ends[i] -= len;
+			}
+		}
+		
+		@NonNull
+		Block copy(Object owner, int from, int to) {
+			Block block = new Block(owner, Math.max(to - from, BLOCK_FILL));
+			int base = pieceStart(from);
+			arraycopy(buffers, from, block.buffers, 0, to - from);
+			arraycopy(starts, from, block.starts, 0, to - from);
+			for (int i = from; i < to; i++) {
+				block.ends[i - from] = ends[i] - base;
+			}
+			block.count = to - from;
+			return block;
+		}
+		
+		void append(Block block) {
+			ensureCapacity(count + block.count);
+			int base = length();
+			arraycopy(block.buffers, 0, buffers, count, block.count);
+			arraycopy(block.starts, 0, starts, count, block.count);
+			for (int i = 0; i < block.count; i++) {
+				ends[count + i] = block.ends[i] + base;
+			}
+			count += block.count;
+		}
+		
+		void ensureCapacity(int capacity) {
+			if (capacity > ends.length) {
+				capacity = Math.max(capacity, ends.length * 2);
+				buffers = Arrays.copyOf(buffers, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+			}
+		}
+	}
+}
@@ -0,0 +1,391 @@
+package com.faslyling.xdev.util.text;
+
+import static java.lang.System.arraycopy;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RopeContent implements Content {
+	private static final char[] EMPTY_TEXT = new char[0];
+	private static final int LEAF_SIZE = 1024;
+	private static final int BRANCH_SIZE = 16;
+	private static final Node EMPTY_ROOT = new Leaf(EMPTY_TEXT);
+	
+	private Node root;
+	
+	public RopeContent() {
+		this(EMPTY_ROOT);
+	}
+	
+	private RopeContent(@NonNull Node root) {
+		this.root = root;
+	}
+	
+	@NonNull
+	@Override
+	public RopeContent snapshot() {
+		return new RopeContent(root);
+	}
+	
+	@Override
+	public void set(@NonNull char[] text, int length) {
+		assert text.length >= length;
+		root = build(toLeaves(text, 0, length, null));
+	}
+	
+	@Override
+	public void insert(int start, @NonNull String text) {
+		insert(start, text, text.length());
+	}
+	
+	@Override
+	public void insert(int start, @NonNull CharSequence text) {
+		insert(start, text, text.length());
+	}
+	
+	@Override
+	public void insert(int start, @NonNull Segment segment) {
+		insert(start, segment, segment.count);
+	}
+	
+	private void insert(int start, CharSequence text, int len) {
+		if (len == 0)
+			return;
+		List<Node> nodes = root.insert(start, text, len);
+		root = nodes.size() == 1 ? nodes.get(0) : build(nodes);
+	}
+	
+	@Override
+	public void delete(int start, int len) {
+		if (len == 0)
+			return;
+		
+		Node node = root.delete(start, start + len);
+		if (node == null)
+			node = EMPTY_ROOT;
+		
+		while (node instanceof Branch && ((Branch) node).children.length == 1)
+			node = ((Branch) node).children[0];
+		root = node;
+	}
+	
+	@Override
+	public int getLength() {
+		return root.length;
+	}
+	
+	@Override
+	public char charAt(int offset) {
+		Node node = root;
+		while (node instanceof Branch) {
+			Node[] children = ((Branch) node).children;
+			int i = 0;
+			while (offset >= children[i].length) {
+				offset -= children[i].length;
+				i++;
+			}
+			node = children[i];
+		}
+		return ((Leaf) node).chars[offset];
+	}
+	
+	@NonNull
+	@Override
+	public CharSequence getSequence(int start, int length) {
+		Segment segment = new Segment();
+		getText(start, length, segment);
+		return new TextCharSequence(segment.array, segment.offset, segment.count);
+	}
+	
+	@NonNull
+	@Override
+	public String getText() {
+		return getText(0, root.length);
+	}
+	
+	@NonNull
+	@Override
+	public String getText(int start, int length) {
+		Segment segment = new Segment();
+		getText(start, length, segment);
+		return segment.toString();
+	}
+	
+	@Override
+	public void getText(int start, int length, @NonNull Segment segment) {
+		Node node = root;
+		int offset = start;
+		while (node instanceof Branch) {
+			Node[] children = ((Branch) node).children;
+			int i = 0;
+			while (i < children.length - 1 && offset >= children[i].length) {
+				offset -= children[i].length;
+				i++;
+			}
+			if (offset + length > children[i].length)
+				break;
+			node = children[i];
+		}
+		
+		if (node instanceof Leaf) {
+			segment.array = ((Leaf) node).chars;
+			segment.offset = offset;
+			segment.count = length;
+		} else {
+			segment.array = new char[length];
+			root.getChars(start, start + length, segment.array, 0);
+			segment.offset = 0;
+			segment.count = length;
+		}
+	}
+	
+	@NonNull
+	private static List<Node> toLeaves(char[] text, int offset, int len, List<Node> nodes) {
+		if (nodes == null)
+			nodes = new ArrayList<>(len / LEAF_SIZE + 1);
+		int count = (len + LEAF_SIZE - 1) / LEAF_SIZE;
+		for (int i = 0; i < count; i++) {
+			int from = offset + (int) ((long) len * i / count);
+			int to = offset + (int) ((long) len * (i + 1) / count);
+			char[] chars = new char[to - from];
+			arraycopy(text, from, chars, 0, to - from);
+			nodes.add(new Leaf(chars));
+		}
+		return nodes;
+	}
+	
+	@NonNull
+	private static Node build(@NonNull List<Node> nodes) {
+		if (nodes.isEmpty())
+			return EMPTY_ROOT;
+		
+		while (nodes.size() > 1)
+			nodes = toBranches(nodes, 0, nodes.size(), new ArrayList<Node>());
+		return nodes.get(0);
+	}
+	
+	@NonNull
+	private static List<Node> toBranches(List<Node> nodes, int from, int to, List<Node> result) {
+		int len = to - from;
+		int count = (len + BRANCH_SIZE - 1) / BRANCH_SIZE;
+		for (int i = 0; i < count; i++) {
+			int start = from + len * i / count;
+			int end = from + len * (i + 1) / count;
+			result.add(new Branch(nodes.subList(start, end).toArray(new Node[0])));
+		}
+		return result;
+	}
+	
+	private abstract static class Node {
+		final int length;
+		
+		Node(int length) {
+			this.length = length;
+		}
+		
+		abstract List<Node> insert(int offset, CharSequence text, int len);
+		
+		abstract Node delete(int start, int end);
+		
+		abstract void getChars(int start, int end, char[] dest, int destOffset);
+	}
+	
+	private static final class Leaf extends Node {
+		final char[] chars;
+		
+		Leaf(char[] chars) {
+			super(chars.length);
+			this.chars = chars;
+		}
+		
+		@Override
+		List<Node> insert(int offset, CharSequence text, int len) {
+			int newLength = length + len;
+			int count = (newLength + LEAF_SIZE - 1) / LEAF_SIZE;
+			List<Node> nodes = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int from = (int) ((long) newLength * i / count);
+				int to = (int) ((long) newLength * (i + 1) / count);
+				char[] leaf = new char[to - from];
+				int headEnd = Math.min(to, offset);
+				if (from < headEnd)
+					arraycopy(chars, from, leaf, 0, headEnd - from);
+				int textFrom = Math.max(from, offset);
+				int textTo = Math.min(to, offset + len);
+				if (textFrom < textTo)
+					TextUtils.getChars(text, textFrom - offset, textTo - offset, leaf, textFrom - from);
+				int tailFrom = Math.max(from, offset + len);
+				if (tailFrom < to)
+					arraycopy(chars, tailFrom - len, leaf, tailFrom - from, to - tailFrom);
+				nodes.add(new Leaf(leaf));
+			}
+			return nodes;
+		}
+		
+		@Override
+		Node delete(int start, int end) {
+			if (start <= 0 && end >= length)
+				return null;
+			
+			start = Math.max(start, 0);
+			end = Math.min(end, length);
+			char[] remaining = new char[length - (end - start)];
+			arraycopy(chars, 0, remaining, 0, start);
+			arraycopy(chars, end, remaining, start, length - end);
+			return new Leaf(remaining);
+		}
+		
+		@Override
+		void getChars(int start, int end, char[] dest, int destOffset) {
+			arraycopy(chars, start, dest, destOffset, end - start);
+		}
+	}
+	
+	private static final class Branch extends Node {
+		final Node[] children;
+		
+		Branch(Node[] children) {
+			super(sumLength(children));
+			this.children = children;
+		}
+		
+		private static int sumLength(Node[] children) {
+			int length = 0;
+			for (Node child : children) {
+				length += child.length;
+			}
+			return length;
+		}
+		
+		@Override
+		List<Node> insert(int offset, CharSequence text, int len) {
+			int i = 0;
+			while (i < children.length - 1 && offset > children[i].length) {
+				offset -= children[i].length;
+				i++;
+			}
+			
+			List<Node> replacement = children[i].insert(offset, text, len);
+			int count = children.length - 1 + replacement.size();
+			List<Node> merged = new ArrayList<>(count);
+			for (int j = 0; j < i; j++) {
+				merged.add(children[j]);
+			}
+			merged.addAll(replacement);
+			for (int j = i + 1; j < children.length; j++) {
+				merged.add(children[j]);
+			}
+			
+			if (count <= BRANCH_SIZE) {
+				List<Node> nodes = new ArrayList<>(1);
+				nodes.add(new Branch(merged.toArray(new Node[count])));
+				return nodes;
+			}
+			return toBranches(merged, 0, count, new ArrayList<Node>());
+		}
+		
+		@Override
+		Node delete(int start, int end) {
+			if (start <= 0 && end >= length)
+				return null;
+			
+			List<Node> remaining = new ArrayList<>(children.length);
+			int childStart = 0;
+			for (Node child : children) {
+				int childEnd = childStart + child.length;
+				if (childEnd <= start || childStart >= end) {
+					remaining.add(child);
+				} else {
+					Node node = child.delete(start - childStart, end - childStart);
+					if (node != null)
+						remaining.add(node);
+				}
+				childStart = childEnd;
+			}
+			
+			return new Branch(rebalance(remaining).toArray(new Node[0]));
+		}
+		
+		@NonNull
+		private static List<Node> rebalance(@NonNull List<Node> nodes) {
+			for (int i = 0; i < nodes.size() && nodes.size() > 1; ) {
+				if (!isUnderfull(nodes.get(i))) {
+					i++;
+					continue;
+				}
+				
+				int left = i + 1 < nodes.size() ? i : i - 1;
+				Node[] balanced = rebalance(nodes.get(left), nodes.get(left + 1));
+				nodes.set(left, balanced[0]);
+				if (balanced.length == 1) {
+					nodes.remove(left + 1);
+					i = left;
+				} else {
+					nodes.set(left + 1, balanced[1]);
+					i = left + 2;
+				}
+			}
+			return nodes;
+		}
+		
+		private static boolean isUnderfull(Node node) {
+			if (node instanceof Leaf)
+				return node.length < LEAF_SIZE / 2;
+			return ((Branch) node).children.length < BRANCH_SIZE / 2;
+		}
+		
+		@NonNull
+		private static Node[] rebalance(Node left, Node right) {
+			if (left instanceof Leaf) {
+				char[] leftChars = ((Leaf) left).chars;
+				char[] rightChars = ((Leaf) right).chars;
+				int total = leftChars.length + rightChars.length;
+				if (total <= LEAF_SIZE)
+					return new Node[]{new Leaf(concat(leftChars, rightChars, 0, total))};
+				return new Node[]{new Leaf(concat(leftChars, rightChars, 0, total / 2)),
+						new Leaf(concat(leftChars, rightChars, total / 2, total))};
+			}
+			
+			List<Node> children = new ArrayList<>(BRANCH_SIZE * 2);
+			Collections.addAll(children, ((Branch) left).children);
+			Collections.addAll(children, ((Branch) right).children);
+			rebalance(children);
+			int count = children.size();
+			if (count <= BRANCH_SIZE)
+				return new Node[]{new Branch(children.toArray(new Node[count]))};
+			return new Node[]{new Branch(children.subList(0, count / 2).toArray(new Node[0])),
+					new Branch(children.subList(count / 2, count).toArray(new Node[0]))};
+		}
+		
+		@NonNull
+		private static char[] concat(char[] left, char[] right, int from, int to) {
+			char[] chars = new char[to - from];
+			int leftEnd = Math.min(to, left.length);
+			if (from < leftEnd)
+				arraycopy(left, from, chars, 0, leftEnd - from);
+			int rightFrom = Math.max(from, left.length);
+			if (rightFrom < to)
+				arraycopy(right, rightFrom - left.length, chars, rightFrom - from, to - rightFrom);
+			return chars;
+		}
+		
+		@Override
+		void getChars(int start, int end, char[] dest, int destOffset) {
+			int childStart = 0;
+			for (Node child : children) {
+				int childEnd = childStart + child.length;
+				if (childEnd > start && childStart < end) {
+					int from = Math.max(start, childStart);
+					int to = Math.min(end, childEnd);
+					child.getChars(from - childStart, to - childStart, dest, destOffset + from - start);
+				}
+				if (childEnd >= end)
+					break;
+				childStart = childEnd;
+			}
+		}
+	}
+}
@@ -9,11 +9,14 @@ import java.text.CharacterIterator;
 import java.util.Arrays;
 
 public class Segment implements CharacterIterator, CharSequence {
-	private static final Pools.SynchronizedPool<Segment> cachePool = new Pools.SynchronizedPool<>(10);
+	private static final Pools.ThreadLocalPool<Segment> cachePool = new Pools.ThreadLocalPool<>(4, 16);
+	private static final int MAX_BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_POOLED_BUFFER_SIZE = 1024;
 	public char[] array;
 	public int offset;
 	public int count;
 	private boolean copy;
+	private char[] buffer;
 	
 	private int pos;
 	
@@ -35,6 +38,14 @@ public class Segment implements CharacterIterator, CharSequence {
 		return segment;
 	}
 	
+	public static long getPoolHitCount() {
+		return cachePool.getHitCount();
+	}
+	
+	public static long getPoolMissCount() {
+		return cachePool.getMissCount();
+	}
+	
 	public static void release(@NonNull Segment segment) {
 		if (segment instanceof CachedSegment) {
 			if (segment.copy)
@@ -42,10 +53,22 @@ public class Segment implements CharacterIterator, CharSequence {
 			segment.array = null;
 			segment.copy = false;
 			segment.count = 0;
+			if (segment.buffer != null && segment.buffer.length > MAX_POOLED_BUFFER_SIZE)
+				segment.buffer = null;
 			cachePool.release(segment);
 		}
 	}
 	
+	@NonNull
+	char[] buffer(int capacity) {
+		if (!(this instanceof CachedSegment) || capacity > MAX_BUFFER_SIZE)
+			return new char[capacity];
+		
+		if (buffer == null || buffer.length < capacity)
+			buffer = new char[capacity];
+		return buffer;
+	}
+	
 	@Override
 	public char first() {
 		pos = offset;
@@ -1,11 +1,14 @@
 package com.faslyling.xdev.util.text;
 
+import static java.lang.System.arraycopy;
+
 import androidx.annotation.NonNull;
 
 public class TextCharSequence implements CharSequence {
 	private final char[] data;
 	private final int offset;
 	private final int len;
+	private final int length;
 	private final TextCharSequence next;
 	
 	public TextCharSequence(char[] data, int offset, int len) {
@@ -16,22 +19,26 @@ public class TextCharSequence implements CharSequence {
 		this.data = data;
 		this.offset = offset;
 		this.len = len;
+		this.length = len + (next != null ? next.length : 0);
 		this.next = next;
 	}
 	
 	@Override
 	public int length() {
-		return len + ((next != null) ? next.length() : 0);
+		return length;
 	}
 	
 	@Override
 	public char charAt(int index) {
-		if (index < len)
-			return data[offset + index];
-		else if (next != null)
-			return next.charAt(index - len);
-		else
+		if (index < 0 || index >= length)
 			throw new ArrayIndexOutOfBoundsException(index);
+		
+		TextCharSequence part = this;
+		while (index >= part.len) {
+			index -= part.len;
+			part = part.next;
+		}
+		return part.data[part.offset + index];
 	}
 	
 	@NonNull
@@ -40,17 +47,32 @@ public class TextCharSequence implements CharSequence {
 		return subSegment(start, end);
 	}
 	
+	void getChars(int start, int end, char[] dest, int destOffset) {
+		TextCharSequence part = this;
+		while (start < end) {
+			if (start < part.len) {
+				int count = Math.min(part.len, end) - start;
+				arraycopy(part.data, part.offset + start, dest, destOffset, count);
+				destOffset += count;
+				start = part.len;
+			}
+			start -= part.len;
+			end -= part.len;
+			part = part.next;
+		}
+	}
+	
 	@NonNull
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
+		StringBuilder sb = new StringBuilder(length);
 		toString(sb);
 		return sb.toString();
 	}
 	
 	private void toString(@NonNull StringBuilder sb) {
-		sb.append(data, offset, len);
-		if (next != null)
-			next.toString(sb);
+		for (TextCharSequence part = this; part != null; part = part.next) {
+			sb.append(part.data, part.offset, part.len);
+		}
 	}
 	
 	@NonNull
@@ -4,21 +4,25 @@ import static java.lang.System.arraycopy;
 
 import androidx.annotation.NonNull;
 
-public class TextContent {
+public class TextContent implements Content {
 	private static final char[] EMPTY_TEXT = new char[0];
 	private char[] text = EMPTY_TEXT;
 	private int length;
 	private int gapStart;
 	private int gapLength;
+	private boolean shared;
 	
+	@Override
 	public void set(@NonNull char[] text, int length) {
 		assert text.length >= length;
 		this.text = text;
 		this.gapStart = length;
 		this.length = length;
-		this.gapLength = 0;
+		this.gapLength = text.length - length;
+		this.shared = false;
 	}
 	
+	@Override
 	public void insert(int start, @NonNull String text) {
 		int len = text.length();
 		prepareGapForInsertion(start, len);
@@ -29,17 +33,17 @@ public class TextContent {
 	}
 	
 	
+	@Override
 	public void insert(int start, @NonNull CharSequence text) {
 		int len = text.length();
 		prepareGapForInsertion(start, len);
-		for (int i = 0; i < len; i++) {
-			this.text[start + i] = text.charAt(i);
-		}
+		TextUtils.getChars(text, 0, len, this.text, start);
 		gapStart += len;
 		length += len;
 		gapLength = this.text.length - length;
 	}
 	
+	@Override
 	public void insert(int start, @NonNull Segment segment) {
 		prepareGapForInsertion(start, segment.count);
 		System.arraycopy(segment.array, segment.offset, text, start, segment.count);
@@ -48,17 +52,26 @@ public class TextContent {
 		gapLength = text.length - length;
 	}
 	
+	@Override
 	public void delete(int start, int len) {
+		unshare();
 		moveGapStart(start);
 		length -= len;
 		gapLength = text.length - length;
 	}
 	
+	@Override
 	public int getLength() {
 		return length;
 	}
 	
+	@Override
+	public char charAt(int offset) {
+		return text[offset < gapStart ? offset : offset + gapLength];
+	}
+	
 	@NonNull
+	@Override
 	public CharSequence getSequence(int start, int length) {
 		if (start >= gapStart)
 			return new TextCharSequence(text, start + gapLength, length);
@@ -71,11 +84,13 @@ public class TextContent {
 	}
 	
 	@NonNull
+	@Override
 	public String getText() {
 		return getText(0, length);
 	}
 	
 	@NonNull
+	@Override
 	public String getText(int start, int length) {
 		if (start >= gapStart)
 			return new String(text, start + gapLength, length);
@@ -87,6 +102,7 @@ public class TextContent {
 		}
 	}
 	
+	@Override
 	public void getText(int start, int length, @NonNull Segment segment) {
 		if (start >= gapStart) {
 			segment.array = text;
@@ -106,6 +122,30 @@ public class TextContent {
 		}
 	}
 	
+	@NonNull
+	ContentSequence getContentSequence(int start, int end) {
+		return new ContentSequence(text, gapStart, gapLength, start, end);
+	}
+	
+	@NonNull
+	@Override
+	public Content snapshot() {
+		TextContent snapshot = new TextContent();
+		snapshot.text = text;
+		snapshot.length = length;
+		snapshot.gapStart = gapStart;
+		snapshot.gapLength = gapLength;
+		snapshot.shared = shared = true;
+		return snapshot;
+	}
+	
+	private void unshare() {
+		if (shared) {
+			text = text.clone();
+			shared = false;
+		}
+	}
+	
 	private void ensureCapacity(int capacity) {
 		if (capacity >= text.length) {
 			int gapEndOld = gapStart + gapLength;
@@ -120,6 +160,7 @@ public class TextContent {
 	}
 	
 	private void prepareGapForInsertion(int start, int len) {
+		unshare();
 		moveGapStart(start);
 		if (gapLength < len)
 			ensureCapacity(length + len);
@@ -0,0 +1,41 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+public final class TextEdit {
+	private final int offset;
+	private final int length;
+	private final String text;
+	
+	public TextEdit(int offset, int length, @NonNull String text) {
+		if (offset < 0 || length < 0)
+			throw new ArrayIndexOutOfBoundsException(offset + ":" + length);
+		
+		this.offset = offset;
+		this.length = length;
+		this.text = text;
+	}
+	
+	public int getOffset() {
+		return offset;
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	
+	public int getEndOffset() {
+		return offset + length;
+	}
+	
+	@NonNull
+	public String getText() {
+		return text;
+	}
+	
+	@NonNull
+	@Override
+	public String toString() {
+		return "TextEdit{offset=" + offset + ", length=" + length + ", text='" + text + "'}";
+	}
+}
@@ -0,0 +1,105 @@
+package com.faslyling.xdev.util.text;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TextMatcher {
+	private final TextSnapshot snapshot;
+	private final Matcher matcher;
+	private boolean matched;
+	
+	public TextMatcher(@NonNull TextModel model, @NonNull Pattern pattern) {
+		this(model.snapshot(), pattern);
+	}
+	
+	public TextMatcher(@NonNull TextSnapshot snapshot, @NonNull Pattern pattern) {
+		this.snapshot = snapshot;
+		matcher = pattern.matcher(snapshot.getCharSequence());
+	}
+	
+	@NonNull
+	public TextSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	public boolean find() {
+		return matched = matcher.find();
+	}
+	
+	public int start() {
+		return matcher.start();
+	}
+	
+	public int end() {
+		return matcher.end();
+	}
+	
+	public String group() {
+		return matcher.group();
+	}
+	
+	public String group(int group) {
+		return matcher.group(group);
+	}
+	
+	@NonNull
+	public TextEdit replace(@NonNull String replacement) {
+		if (!matched)
+			throw new IllegalStateException("No match available");
+		
+		return new TextEdit(matcher.start(), matcher.end() - matcher.start(), expand(replacement));
+	}
+	
+	@NonNull
+	public List<TextEdit> replaceAll(@NonNull String replacement) {
+		List<TextEdit> edits = new ArrayList<>();
+		while (find()) {
+			edits.add(replace(replacement));
+		}
+		return edits;
+	}
+	
+	@NonNull
+	private String expand(@NonNull String replacement) {
+		StringBuilder sb = new StringBuilder(replacement.length());
+		int length = replacement.length();
+		for (int i = 0; i < length; i++) {
+			char c = replacement.charAt(i);
+			if (c == '\\' && i + 1 < length) {
+				sb.append(replacement.charAt(++i));
+			} else if (c == '$' && i + 1 < length && replacement.charAt(i + 1) == '{') {
+				int close = replacement.indexOf('}', i + 2);
+				if (close == -1)
+					throw new IllegalArgumentException("Missing '}' in group reference: " + replacement);
+				if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+					throw new IllegalArgumentException("Named group references require API 26: " + replacement);
+				appendGroup(sb, matcher.group(replacement.substring(i + 2, close)));
+				i = close;
+			} else if (c == '$' && i + 1 < length && Character.isDigit(replacement.charAt(i + 1))) {
+				int group = replacement.charAt(++i) - '0';
+				while (i + 1 < length && Character.isDigit(replacement.charAt(i + 1))) {
+					int next = group * 10 + replacement.charAt(i + 1) - '0';
+					if (next > matcher.groupCount())
+						break;
+					group = next;
+					i++;
+				}
+				appendGroup(sb, matcher.group(group));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	private static void appendGroup(@NonNull StringBuilder sb, String group) {
+		if (group != null)
+			sb.append(group);
+	}
+}
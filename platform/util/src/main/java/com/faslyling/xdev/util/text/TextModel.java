@@ -1,35 +1,151 @@
 package com.faslyling.xdev.util.text;
 
+import android.annotation.SuppressLint;
+import android.os.Build;
+
 import androidx.annotation.NonNull;
 
 import com.faslyling.xdev.util.IntArrayList;
 import com.faslyling.xdev.util.SafeListenerList;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 public class TextModel {
+	private static final int LOAD_CHUNK_SIZE = 64 * 1024;
+	private static final Comparator<TextEdit> EDIT_ORDER = new Comparator<TextEdit>() {
+		@Override
+		public int compare(TextEdit edit1, TextEdit edit2) {
+			return Integer.compare(edit1.getOffset(), edit2.getOffset());
+		}
+	};
+	private static final Query<Void> TEXT_SEGMENT = new Query<Void>() {
+		@Override
+		public Void run(@NonNull TextModel model, int start, int length, Segment segment) {
+			model.text(start, length, segment);
+			return null;
+		}
+	};
+	private static final Query<String> TEXT = new Query<String>() {
+		@Override
+		public String run(@NonNull TextModel model, int start, int length, Segment segment) {
+			return model.text(start, length);
+		}
+	};
+	private static final Query<CharSequence> SEQUENCE = new Query<CharSequence>() {
+		@Override
+		public CharSequence run(@NonNull TextModel model, int start, int length, Segment segment) {
+			return model.sequence(start, length);
+		}
+	};
+	private static final Query<CharSequence> LINE_SEQUENCE = new Query<CharSequence>() {
+		@Override
+		public CharSequence run(@NonNull TextModel model, int line, int unused, Segment segment) {
+			return model.lineSequence(line);
+		}
+	};
+	private static final Query<String> LINE_TEXT = new Query<String>() {
+		@Override
+		public String run(@NonNull TextModel model, int line, int unused, Segment segment) {
+			return model.lineText(line);
+		}
+	};
+	private static final Query<Void> LINE_TEXT_SEGMENT = new Query<Void>() {
+		@Override
+		public Void run(@NonNull TextModel model, int line, int relativeStartOffset, Segment segment) {
+			model.lineText(line, relativeStartOffset, segment);
+			return null;
+		}
+	};
+	private static final IntQuery LINE_OF_OFFSET = new IntQuery() {
+		@Override
+		public int run(@NonNull TextModel model, int offset) {
+			return model.lineOfOffset(offset);
+		}
+	};
+	private static final IntQuery LINE_START_OFFSET = new IntQuery() {
+		@Override
+		public int run(@NonNull TextModel model, int line) {
+			return model.lineStartOffset(line);
+		}
+	};
+	private static final IntQuery LINE_END_OFFSET = new IntQuery() {
+		@Override
+		public int run(@NonNull TextModel model, int line) {
+			return model.lineEndOffset(line);
+		}
+	};
+	private static final IntQuery LINE_LENGTH = new IntQuery() {
+		@Override
+		public int run(@NonNull TextModel model, int line) {
+			return model.lineEndOffset(line) - model.lineStartOffset(line) - 1;
+		}
+	};
+	private static final IntQuery STORED_FOLD_LEVEL = new IntQuery() {
+		@Override
+		public int run(@NonNull TextModel model, int line) {
+			return model.storedFoldLevel(line);
+		}
+	};
 	private final SafeListenerList<ModelListener> modelListeners = new SafeListenerList<>();
 	private final SafeListenerList<UndoListener> undoListeners = new SafeListenerList<>();
+	private final SafeListenerList<ChangeDispatcher> changeDispatchers = new SafeListenerList<>();
 	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final StampedLock stampedLock;
+	private long writeStamp;
 	private boolean editable;
 	private boolean readOnly;
 	private boolean readOnlyOverride;
-	private final TextContent content;
+	private final Content content;
 	private boolean transaction;
+	private long version;
+	private volatile TextSnapshot snapshot;
 	
 	private UndoManager undoManager;
+	private final Segment removedText = new Segment();
 	private boolean undoInProgress;
 	private boolean dirty;
 	
 	private LineManager lineManager;
-	private IntArrayList intArrayList;
 	private FoldHandler foldHandler;
+	private volatile FoldService foldService;
 	
 	public TextModel() {
-		content = new TextContent();
-		intArrayList=new IntArrayList();
+		this(new TextContent());
+	}
+	
+	public TextModel(@NonNull Content content) {
+		this(content, Build.VERSION.SDK_INT >= Build.VERSION_CODES.N);
+	}
+	
+	@SuppressLint("NewApi")
+	TextModel(@NonNull Content content, boolean optimisticReads) {
+		this.content = content;
+		stampedLock = optimisticReads ? new StampedLock() : null;
 		undoManager = new UndoManager(this);
 		lineManager = new LineManager();
+		
+		if (content instanceof MappedContent) {
+			readOnly = true;
+			lineManager._contentInserted(((MappedContent) content).getLineEndOffsets());
+		}
+	}
+	
+	private TextModel(@NonNull TextSnapshot snapshot, @NonNull LineManager lineManager, @NonNull FoldHandler foldHandler) {
+		content = snapshot.getContent();
+		stampedLock = null;
+		undoManager = new UndoManager(this);
+		this.lineManager = lineManager;
+		readOnly = true;
+		version = snapshot.getVersion();
+		this.foldHandler = foldHandler;
 	}
 	
 	
@@ -41,6 +157,11 @@ public class TextModel {
 		return readOnly || readOnlyOverride;
 	}
 	
+	private void checkWritable() {
+		if (isReadOnly())
+			throw new UnsupportedOperationException("Text model is read-only");
+	}
+	
 	public void setEditable(boolean editable) {
 		this.editable = editable;
 	}
@@ -49,11 +170,17 @@ public class TextModel {
 		return editable;
 	}
 	
+	@SuppressLint("NewApi")
 	public void writeLock() {
 		lock.writeLock().lock();
+		if (stampedLock != null && lock.getWriteHoldCount() == 1)
+			writeStamp = stampedLock.writeLock();
 	}
 	
+	@SuppressLint("NewApi")
 	public void writeUnlock() {
+		if (stampedLock != null && lock.getWriteHoldCount() == 1)
+			stampedLock.unlockWrite(writeStamp);
 		lock.writeLock().unlock();
 	}
 	
@@ -65,6 +192,58 @@ public class TextModel {
 		lock.readLock().unlock();
 	}
 	
+	@SuppressLint("NewApi")
+	private long tryOptimisticRead() {
+		return stampedLock != null ? stampedLock.tryOptimisticRead() : 0;
+	}
+	
+	@SuppressLint("NewApi")
+	private boolean validate(long stamp) {
+		return stampedLock.validate(stamp);
+	}
+	
+	private <T> T read(@NonNull Query<T> query, int arg1, int arg2, Segment segment) {
+		long stamp = tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				T result = query.run(this, arg1, arg2, segment);
+				if (validate(stamp))
+					return result;
+			} catch (IndexOutOfBoundsException | NegativeArraySizeException | NullPointerException | IllegalArgumentException e) {
+				if (validate(stamp))
+					throw e;
+			}
+		}
+		
+		try {
+			readLock();
+			return query.run(this, arg1, arg2, segment);
+		} finally {
+			readUnlock();
+		}
+	}
+	
+	private int readInt(@NonNull IntQuery query, int arg) {
+		long stamp = tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				int result = query.run(this, arg);
+				if (validate(stamp))
+					return result;
+			} catch (IndexOutOfBoundsException | NegativeArraySizeException | NullPointerException | IllegalArgumentException e) {
+				if (validate(stamp))
+					throw e;
+			}
+		}
+		
+		try {
+			readLock();
+			return query.run(this, arg);
+		} finally {
+			readUnlock();
+		}
+	}
+	
 	public void addModelListener(@NonNull ModelListener listener) {
 		modelListeners.add(listener);
 	}
@@ -73,38 +252,142 @@ public class TextModel {
 		modelListeners.remove(listener);
 	}
 	
+	public void addModelChangeListener(@NonNull ModelChangeListener listener, @NonNull Executor executor) {
+		synchronized (changeDispatchers) {
+			for (ChangeDispatcher dispatcher : changeDispatchers) {
+				if (dispatcher.getListener() == listener)
+					return;
+			}
+			changeDispatchers.add(new ChangeDispatcher(this, listener, executor));
+		}
+	}
+	
+	public void removeModelChangeListener(@NonNull ModelChangeListener listener) {
+		synchronized (changeDispatchers) {
+			for (ChangeDispatcher dispatcher : changeDispatchers) {
+				if (dispatcher.getListener() == listener)
+					changeDispatchers.remove(dispatcher);
+			}
+		}
+	}
+	
+	
+	public void load(@NonNull Reader reader) throws IOException {
+		List<char[]> chunks = new ArrayList<>();
+		IntArrayList endOffsets = new IntArrayList();
+		int length = 0;
+		while (true) {
+			char[] chunk = new char[LOAD_CHUNK_SIZE];
+			int count = 0;
+			int read;
+			while (count < chunk.length && (read = reader.read(chunk, count, chunk.length - count)) != -1) {
+				count += read;
+			}
+			if (count == 0 && !chunks.isEmpty())
+				break;
+			
+			LineScanner.scan(chunk, 0, count, length, endOffsets);
+			chunks.add(chunk);
+			length += count;
+			if (count < chunk.length)
+				break;
+		}
+		endOffsets.add(length + 1);
+		
+		if (content instanceof TextContent) {
+			char[] text = new char[length];
+			for (int i = 0, offset = 0; offset < length; i++, offset += LOAD_CHUNK_SIZE) {
+				System.arraycopy(chunks.set(i, null), 0, text, offset, Math.min(LOAD_CHUNK_SIZE, length - offset));
+			}
+			setText(text, length, endOffsets);
+			return;
+		}
+		
+		try {
+			writeLock();
+			
+			content.set(chunks.set(0, null), Math.min(LOAD_CHUNK_SIZE, length));
+			for (int i = 1, offset = LOAD_CHUNK_SIZE; offset < length; i++, offset += LOAD_CHUNK_SIZE) {
+				content.insert(offset, new Segment(chunks.set(i, null), 0, Math.min(LOAD_CHUNK_SIZE, length - offset)));
+			}
+			textSet(endOffsets);
+		} finally {
+			writeUnlock();
+		}
+	}
+	
+	public void setText(@NonNull CharSequence text) {
+		int length = text.length();
+		char[] chars = new char[length];
+		TextUtils.getChars(text, 0, length, chars, 0);
+		
+		IntArrayList endOffsets = LineScanner.scan(chars, 0, length);
+		endOffsets.add(length + 1);
+		setText(chars, length, endOffsets);
+	}
+	
+	private void setText(@NonNull char[] text, int length, @NonNull IntArrayList endOffsets) {
+		try {
+			writeLock();
+			
+			content.set(text, length);
+			textSet(endOffsets);
+		} finally {
+			writeUnlock();
+		}
+	}
+	
+	private void textSet(@NonNull IntArrayList endOffsets) {
+		lineManager._contentInserted(endOffsets);
+		version++;
+		
+		undoManager.clear();
+		setDirty(false);
+		
+		fireTextSet();
+	}
 	
 	public void insert(int offset, @NonNull String text) {
-		insert(offset, (CharSequence) text);
+		if (!text.isEmpty())
+			insert(offset, text, LineScanner.scan(text));
 	}
 	
 	public void insert(int offset, @NonNull Segment text) {
-		insert(offset, (CharSequence) text);
+		if (text.count != 0)
+			insert(offset, text, LineScanner.scan(text));
 	}
 	
 	public void insert(int offset, @NonNull CharSequence text) {
+		if (text instanceof String) {
+			insert(offset, (String) text);
+		} else if (text instanceof Segment) {
+			insert(offset, (Segment) text);
+		} else {
+			int len = text.length();
+			char[] chars = new char[len];
+			TextUtils.getChars(text, 0, len, chars, 0);
+			insert(offset, new Segment(chars, 0, len));
+		}
+	}
+	
+	private void insert(int offset, @NonNull CharSequence text, @NonNull IntArrayList endOffsets) {
 		int len = text.length();
-		if (len == 0)
-			return;
 		try {
 			writeLock();
+			checkWritable();
 			
 			if (offset < 0 || offset > content.getLength())
 				throw new ArrayIndexOutOfBoundsException(offset);
 			
-			content.insert(offset, text);
-			
-			intArrayList.clear();
-			
-			for (int i = 0; i < len; i++) {
-				if (text.charAt(i) == '\n')
-					intArrayList.add(i + 1);
-			}
+			if (text instanceof Segment)
+				content.insert(offset, (Segment) text);
+			else
+				content.insert(offset, (String) text);
 			
 			if (!undoInProgress)
-				undoManager.contentInserted(offset, text.toString(), !dirty);
+				undoManager.contentInserted(offset, text, !dirty);
 			
-			internalInserted(offset, len, intArrayList);
+			internalInserted(offset, len, endOffsets);
 		} finally {
 			writeUnlock();
 		}
@@ -120,6 +403,7 @@ public class TextModel {
 			fireTextPreInserted(startLine, offset, length, numLines);
 			
 			lineManager.contentInserted(startLine, offset, length, numLines, endOffsets);
+			version++;
 			
 			setDirty(true);
 			
@@ -138,6 +422,7 @@ public class TextModel {
 		try {
 			transaction = true;
 			writeLock();
+			checkWritable();
 			
 			if (offset < 0 || length < 0 || offset + length > content.getLength())
 				throw new ArrayIndexOutOfBoundsException(offset + ":" + length);
@@ -148,15 +433,17 @@ public class TextModel {
 			int numLines = endLine - startLine;
 			
 			if (!undoInProgress ) {
-				undoManager.contentRemoved(offset, length, getText(offset, length),
-						!dirty);
+				content.getText(offset, length, removedText);
+				undoManager.contentRemoved(offset, length, removedText, !dirty);
+				removedText.array = null;
 			}
 			
 			fireTextPreDeleted(startLine,offset,length,numLines);
-		
+			
 			content.delete(offset, length);
 			lineManager.contentRemoved(startLine, offset, length, numLines);
-		
+			version++;
+			
 			setDirty(true);
 			fireTextDeleted(startLine,offset,length,numLines);
 			
@@ -169,31 +456,92 @@ public class TextModel {
 	}
 	
 	
-	public void getText(int start, int length, Segment seg) {
+	public void applyEdits(@NonNull List<TextEdit> edits) {
+		if (edits.isEmpty())
+			return;
+		
+		TextEdit[] sorted = edits.toArray(new TextEdit[0]);
+		Arrays.sort(sorted, EDIT_ORDER);
+		
 		try {
-			readLock();
+			transaction = true;
+			writeLock();
+			checkWritable();
+			
+			int end = 0;
+			for (TextEdit edit : sorted) {
+				if (edit.getOffset() < end)
+					throw new IllegalArgumentException("Overlapping edits at offset " + edit.getOffset());
+				end = edit.getEndOffset();
+			}
+			if (end > content.getLength())
+				throw new ArrayIndexOutOfBoundsException(end);
 			
-			if (start < 0 || length < 0 || start + length > content.getLength())
-				throw new ArrayIndexOutOfBoundsException(start + ":" + length);
+			boolean record = !undoInProgress;
+			IntArrayList offsets = record ? new IntArrayList(sorted.length) : null;
+			String[] removed = record ? new String[sorted.length] : null;
+			String[] inserted = record ? new String[sorted.length] : null;
+			if (record) {
+				for (int i = 0; i < sorted.length; i++) {
+					TextEdit edit = sorted[i];
+					offsets.add(edit.getOffset());
+					removed[i] = content.getText(edit.getOffset(), edit.getLength());
+					inserted[i] = edit.getText();
+				}
+			}
 			
-			content.getText(start, length, seg);
+			for (int i = sorted.length - 1; i >= 0; i--) {
+				TextEdit edit = sorted[i];
+				int offset = edit.getOffset();
+				int length = edit.getLength();
+				String text = edit.getText();
+				int startLine = lineManager.getLineOfOffset(offset);
+				
+				if (length != 0) {
+					int numLines = lineManager.getLineOfOffset(offset + length) - startLine;
+					fireTextPreDeleted(startLine, offset, length, numLines);
+					
+					content.delete(offset, length);
+					lineManager.contentRemoved(startLine, offset, length, numLines);
+					version++;
+					
+					fireTextDeleted(startLine, offset, length, numLines);
+				}
+				
+				if (!text.isEmpty()) {
+					IntArrayList endOffsets = LineScanner.scan(text);
+					int numLines = endOffsets.size();
+					fireTextPreInserted(startLine, offset, text.length(), numLines);
+					
+					content.insert(offset, text);
+					lineManager.contentInserted(startLine, offset, text.length(), numLines, endOffsets);
+					version++;
+					
+					fireTextInserted(startLine, offset, text.length(), numLines);
+				}
+			}
+			
+			if (record)
+				undoManager.contentEdited(offsets, removed, inserted, !dirty);
+			
+			setDirty(true);
+			
+			if (!undoInProgress && !isCompoundEdit())
+				fireTransactionComplete();
 		} finally {
-			readUnlock();
+			transaction = false;
+			writeUnlock();
 		}
 	}
 	
+	public void getText(int start, int length, Segment seg) {
+		read(TEXT_SEGMENT, start, length, seg);
+	}
+	
 	public String getText(int start, int length) {
-		try {
-			readLock();
-			
-			if (start < 0 || length < 0 || start + length > content.getLength())
-				throw new ArrayIndexOutOfBoundsException(start + ":" + length);
-			
-			return content.getText(start, length);
-		} finally {
-			readUnlock();
-		}
+		return read(TEXT, start, length, null);
 	}
+	
 	public String getText() {
 		try {
 			readLock();
@@ -204,19 +552,44 @@ public class TextModel {
 	}
 	
 	public CharSequence getSequence(int start, int length) {
+		return read(SEQUENCE, start, length, null);
+	}
+	
+	public int getLength() {
+		return content.getLength();
+	}
+	
+	public long getVersion() {
+		return version;
+	}
+	
+	@NonNull
+	public TextSnapshot snapshot() {
 		try {
 			readLock();
-			
-			if (start < 0 || length < 0 || start + length > content.getLength())
-				throw new ArrayIndexOutOfBoundsException(start + ":" + length);
-			
-			return content.getSequence(start, length);
+			TextSnapshot snapshot = this.snapshot;
+			if (snapshot == null || snapshot.getVersion() != version) {
+				snapshot = new TextSnapshot(version, content.snapshot(), lineManager.snapshot());
+				this.snapshot = snapshot;
+			}
+			return snapshot;
 		} finally {
 			readUnlock();
 		}
 	}
-	public int getLength() {
-		return content.getLength();
+	
+	@NonNull
+	CharSequence getContentSequence() {
+		int length = content.getLength();
+		if (content instanceof TextContent)
+			return ((TextContent) content).getContentSequence(0, length);
+		
+		return new ContentSequence(content, 0, length);
+	}
+	
+	@NonNull
+	UndoManager getUndoManager() {
+		return undoManager;
 	}
 	
 	public int getLineCount(){
@@ -224,85 +597,27 @@ public class TextModel {
 	}
 	
 	public CharSequence getLineSequence(int line) {
-		if (line < 0 || line >= lineManager.getLineCount())
-			throw new ArrayIndexOutOfBoundsException(line);
-		
-		try {
-			readLock();
-			
-			int start = line == 0 ? 0 : lineManager.getLineEndOffset(line - 1);
-			int end = lineManager.getLineEndOffset(line);
-			
-			return getSequence(start, end - start - 1);
-		} finally {
-			readUnlock();
-		}
+		return read(LINE_SEQUENCE, line, 0, null);
 	}
 	
 	public int getLineOfOffset(int offset) {
-		try {
-			readLock();
-			
-			if (offset < 0 || offset > getLength())
-				throw new ArrayIndexOutOfBoundsException(offset);
-			
-			return lineManager.getLineOfOffset(offset);
-		} finally {
-			readUnlock();
-		}
+		return readInt(LINE_OF_OFFSET, offset);
 	}
 	
 	public int getLineStartOffset(int line) {
-		try {
-			readLock();
-			
-			if (line < 0 || line >= lineManager.getLineCount())
-				throw new ArrayIndexOutOfBoundsException(line);
-			else if (line == 0)
-				return 0;
-			
-			return lineManager.getLineEndOffset(line - 1);
-		} finally {
-			readUnlock();
-		}
+		return readInt(LINE_START_OFFSET, line);
 	}
 	
 	public int getLineEndOffset(int line) {
-		try {
-			readLock();
-			
-			if (line < 0 || line >= lineManager.getLineCount())
-				throw new ArrayIndexOutOfBoundsException(line);
-			
-			return lineManager.getLineEndOffset(line);
-		} finally {
-			readUnlock();
-		}
+		return readInt(LINE_END_OFFSET, line);
 	}
 	
 	public int getLineLength(int line) {
-		try {
-			readLock();
-			return getLineEndOffset(line) - getLineStartOffset(line) - 1;
-		} finally {
-			readUnlock();
-		}
+		return readInt(LINE_LENGTH, line);
 	}
 	
 	public String getLineText(int line) {
-		if (line < 0 || line >= lineManager.getLineCount())
-			throw new ArrayIndexOutOfBoundsException(line);
-		
-		try {
-			readLock();
-			
-			int start = line == 0 ? 0 : lineManager.getLineEndOffset(line - 1);
-			int end = lineManager.getLineEndOffset(line);
-			
-			return getText(start, end - start - 1);
-		} finally {
-			readUnlock();
-		}
+		return read(LINE_TEXT, line, 0, null);
 	}
 	
 	public void getLineText(int line, Segment segment) {
@@ -310,27 +625,80 @@ public class TextModel {
 	}
 	
 	public void getLineText(int line, int relativeStartOffset, Segment segment) {
+		read(LINE_TEXT_SEGMENT, line, relativeStartOffset, segment);
+	}
+	
+	private void checkRange(int start, int length) {
+		if (start < 0 || length < 0 || start + length > content.getLength())
+			throw new ArrayIndexOutOfBoundsException(start + ":" + length);
+	}
+	
+	private void checkLine(int line) {
 		if (line < 0 || line >= lineManager.getLineCount())
 			throw new ArrayIndexOutOfBoundsException(line);
+	}
+	
+	private void text(int start, int length, Segment segment) {
+		checkRange(start, length);
+		content.getText(start, length, segment);
+	}
+	
+	private String text(int start, int length) {
+		checkRange(start, length);
+		return content.getText(start, length);
+	}
+	
+	private CharSequence sequence(int start, int length) {
+		checkRange(start, length);
+		return content.getSequence(start, length);
+	}
+	
+	private int lineOfOffset(int offset) {
+		if (offset < 0 || offset > content.getLength())
+			throw new ArrayIndexOutOfBoundsException(offset);
 		
-		try {
-			readLock();
-			
-			int start = (line == 0 ? 0 : lineManager.getLineEndOffset(line - 1));
-			int end = lineManager.getLineEndOffset(line);
-			if ((start + relativeStartOffset) > end) {
-				throw new IllegalArgumentException("This index is outside the line length (start+relativeOffset):" + start + " + " + relativeStartOffset + " > " + "endffset:" + end);
-			} else {
-				getText(start + relativeStartOffset, end - start - relativeStartOffset - 1, segment);
-			}
-		} finally {
-			readUnlock();
+		return lineManager.getLineOfOffset(offset);
+	}
+	
+	private int lineStartOffset(int line) {
+		checkLine(line);
+		return line == 0 ? 0 : lineManager.getLineEndOffset(line - 1);
+	}
+	
+	private int lineEndOffset(int line) {
+		checkLine(line);
+		return lineManager.getLineEndOffset(line);
+	}
+	
+	private CharSequence lineSequence(int line) {
+		int start = lineStartOffset(line);
+		return sequence(start, lineManager.getLineEndOffset(line) - start - 1);
+	}
+	
+	private String lineText(int line) {
+		int start = lineStartOffset(line);
+		return text(start, lineManager.getLineEndOffset(line) - start - 1);
+	}
+	
+	private void lineText(int line, int relativeStartOffset, Segment segment) {
+		int start = lineStartOffset(line);
+		int end = lineManager.getLineEndOffset(line);
+		if ((start + relativeStartOffset) > end) {
+			throw new IllegalArgumentException("This index is outside the line length (start+relativeOffset):" + start + " + " + relativeStartOffset + " > " + "endffset:" + end);
+		} else {
+			text(start + relativeStartOffset, end - start - relativeStartOffset - 1, segment);
 		}
 	}
+	
 	private void fireTextSet() {
+		scheduleFoldUpdate();
 		for (ModelListener listener : modelListeners) {
 			listener.textSet(this);
 		}
+		for (ChangeDispatcher dispatcher : changeDispatchers) {
+			dispatcher.textSet();
+			dispatcher.flush(version);
+		}
 	}
 	
 	private void fireTextPreInserted(int startLine, int start, int length, int numLines) {
@@ -343,6 +711,9 @@ public class TextModel {
 		for (ModelListener listener : modelListeners) {
 			listener.textInserted(this, startLine, start, length, numLines);
 		}
+		for (ChangeDispatcher dispatcher : changeDispatchers) {
+			dispatcher.linesInserted(startLine, numLines);
+		}
 	}
 	
 	private void fireTextPreDeleted(int startLine, int start, int length, int numLines) {
@@ -355,12 +726,19 @@ public class TextModel {
 		for (ModelListener listener : modelListeners) {
 			listener.textDeleted(this, startLine, start, length, numLines);
 		}
+		for (ChangeDispatcher dispatcher : changeDispatchers) {
+			dispatcher.linesRemoved(startLine, numLines);
+		}
 	}
 	
 	private void fireTransactionComplete() {
+		scheduleFoldUpdate();
 		for (ModelListener listener : modelListeners) {
 			listener.transactionComplete(this);
 		}
+		for (ChangeDispatcher dispatcher : changeDispatchers) {
+			dispatcher.flush(version);
+		}
 	}
 	
 	
@@ -402,6 +780,15 @@ public class TextModel {
 		undoManager.setLimit(limit);
 	}
 	
+	public void setUndoByteLimit(long limit) {
+		if (undoManager == null) return;
+		undoManager.setByteLimit(limit);
+	}
+	
+	public long getUndoHistorySize() {
+		return undoManager != null ? undoManager.getSize() : 0;
+	}
+	
 	public boolean canUndo() {
 		return undoManager != null && undoManager.canUndo();
 	}
@@ -494,22 +881,129 @@ public class TextModel {
 	}
 	
 	public void setFoldHandler(@NonNull FoldHandler foldHandler) {
-		FoldHandler oldFoldHandler = this.foldHandler;
-		
-		if (foldHandler.equals(oldFoldHandler))
-			return;
-		
-		this.foldHandler = foldHandler;
-		
-		lineManager.setFirstInvalidFoldLevel(0);
+		try {
+			writeLock();
+			FoldHandler oldFoldHandler = this.foldHandler;
+			
+			if (foldHandler.equals(oldFoldHandler))
+				return;
+			
+			this.foldHandler = foldHandler;
+			
+			lineManager.setFirstInvalidFoldLevel(0);
+		} finally {
+			writeUnlock();
+		}
 		
 		fireFoldHandlerChanged();
+		scheduleFoldUpdate();
 	}
 	
 	public FoldHandler getFoldHandler() {
 		return foldHandler;
 	}
 	
+	void setFoldService(FoldService foldService) {
+		this.foldService = foldService;
+	}
+	
+	private void scheduleFoldUpdate() {
+		FoldService foldService = this.foldService;
+		if (foldService != null)
+			foldService.schedule();
+	}
+	
+	boolean updateFoldLevels(long timeSlice, @NonNull Executor listenerExecutor) {
+		long deadline = System.nanoTime() + timeSlice;
+		FoldHandler foldHandler;
+		TextSnapshot snapshot;
+		LineManager lines;
+		int first;
+		
+		try {
+			writeLock();
+			
+			foldHandler = this.foldHandler;
+			first = lineManager.getFirstInvalidFoldLevel();
+			if (first == -1 || foldHandler == null || foldHandler instanceof DummyFoldHandler)
+				return false;
+			
+			snapshot = snapshot();
+			lines = lineManager.snapshot();
+		} finally {
+			writeUnlock();
+		}
+		
+		TextModel model = new TextModel(snapshot, lines, foldHandler);
+		IntArrayList levels = new IntArrayList();
+		IntArrayList precedingFoldLevels = null;
+		int lineCount = snapshot.getLineCount();
+		Segment seg = Segment.obtain();
+		int line = first;
+		do {
+			int newFoldLevel = foldHandler.getFoldLevel(model, line, seg);
+			if (line == first && newFoldLevel != model.lineManager.getFoldLevel(line)) {
+				precedingFoldLevels = foldHandler.getPrecedingFoldLevels(model, line, seg, newFoldLevel);
+				if (precedingFoldLevels != null) {
+					for (int index = 0; index < precedingFoldLevels.size(); index++) {
+						model.lineManager.setFoldLevel(line - 1 - index, precedingFoldLevels.get(index));
+					}
+				}
+			}
+			model.lineManager.setFoldLevel(line, newFoldLevel);
+			model.lineManager.setFirstInvalidFoldLevel(line + 1 < lineCount ? line + 1 : -1);
+			levels.add(newFoldLevel);
+			line++;
+		} while (line < lineCount && System.nanoTime() < deadline);
+		Segment.release(seg);
+		
+		int firstUpdatedFoldLevel = -1;
+		int last = first + levels.size() - 1;
+		boolean more;
+		try {
+			writeLock();
+			
+			if (version != snapshot.getVersion() || foldHandler != this.foldHandler
+					|| lineManager.getFirstInvalidFoldLevel() != first)
+				return true;
+			
+			if (precedingFoldLevels != null) {
+				int j = first;
+				for (int index = 0; index < precedingFoldLevels.size(); index++) {
+					j--;
+					lineManager.setFoldLevel(j, precedingFoldLevels.get(index));
+				}
+				if (j < first)
+					firstUpdatedFoldLevel = j;
+			}
+			
+			for (int i = 0; i < levels.size(); i++) {
+				if (lineManager.getFoldLevel(first + i) != levels.get(i)) {
+					if (firstUpdatedFoldLevel == -1)
+						firstUpdatedFoldLevel = first + i;
+					lineManager.setFoldLevel(first + i, levels.get(i));
+				}
+			}
+			
+			more = last < lineManager.getLineCount() - 1;
+			lineManager.setFirstInvalidFoldLevel(more ? last + 1 : -1);
+		} finally {
+			writeUnlock();
+		}
+		
+		if (firstUpdatedFoldLevel != -1) {
+			final int startLine = firstUpdatedFoldLevel;
+			final int endLine = last;
+			listenerExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					fireFoldLevelChanged(startLine, endLine);
+				}
+			});
+		}
+		return more;
+	}
+	
 	public boolean isFoldStart(int line) {
 		return line != getLineCount() - 1
 				&& getFoldLevel(line) < getFoldLevel(line + 1);
@@ -522,6 +1016,9 @@ public class TextModel {
 	}
 	
 	public int getFoldLevel(int line) {
+		if (foldService != null)
+			return readInt(STORED_FOLD_LEVEL, line);
+		
 		if (line < 0 || line >= lineManager.getLineCount())
 			throw new ArrayIndexOutOfBoundsException(line);
 		
@@ -532,13 +1029,13 @@ public class TextModel {
 		if (firstInvalidFoldLevel == -1 || line < firstInvalidFoldLevel) {
 			return lineManager.getFoldLevel(line);
 		} else {
-		
+			
 			int newFoldLevel = 0;
 			boolean changed = false;
 			int firstUpdatedFoldLevel = firstInvalidFoldLevel;
+			Segment seg = Segment.obtain();
 			
 			for (int i = firstInvalidFoldLevel; i <= line; i++) {
-				Segment seg = new Segment();
 				newFoldLevel = foldHandler.getFoldLevel(this, i, seg);
 				if (newFoldLevel != lineManager.getFoldLevel(i)) {
 					changed = true;
@@ -559,6 +1056,7 @@ public class TextModel {
 				}
 				lineManager.setFoldLevel(i, newFoldLevel);
 			}
+			Segment.release(seg);
 			
 			if (line == lineManager.getLineCount() - 1)
 				lineManager.setFirstInvalidFoldLevel(-1);
@@ -571,6 +1069,18 @@ public class TextModel {
 			return newFoldLevel;
 		}
 	}
+	
+	private int storedFoldLevel(int line) {
+		checkLine(line);
+		if (foldHandler instanceof DummyFoldHandler)
+			return 0;
+		
+		int firstInvalidFoldLevel = lineManager.getFirstInvalidFoldLevel();
+		if (firstInvalidFoldLevel != -1 && line >= firstInvalidFoldLevel)
+			scheduleFoldUpdate();
+		return lineManager.getFoldLevel(line);
+	}
+	
 	public int[] getFoldAtLine(int line) {
 		int start, end;
 		
@@ -618,6 +1128,11 @@ public class TextModel {
 		for (ModelListener listener : modelListeners) {
 			listener.foldLevelChanged(this,startLine,endLine);
 		}
+		for (ChangeDispatcher dispatcher : changeDispatchers) {
+			dispatcher.linesChanged(startLine, endLine);
+			if (!transaction)
+				dispatcher.flush(version);
+		}
 	}
 	
 	private void fireFoldHandlerChanged() {
@@ -625,4 +1140,12 @@ public class TextModel {
 			listener.foldHandlerChanged(this);
 		}
 	}
+	
+	private interface Query<T> {
+		T run(@NonNull TextModel model, int arg1, int arg2, Segment segment);
+	}
+	
+	private interface IntQuery {
+		int run(@NonNull TextModel model, int arg);
+	}
 }
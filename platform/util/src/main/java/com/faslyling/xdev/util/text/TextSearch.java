@@ -0,0 +1,186 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.faslyling.xdev.util.IntPair;
+import com.faslyling.xdev.util.LongArrayList;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class TextSearch {
+	private static final int CHUNK_SIZE = 256 * 1024;
+	
+	private final TextSnapshot snapshot;
+	private final char[] pattern;
+	private final boolean ignoreCase;
+	private final boolean selfOverlapping;
+	private volatile boolean cancelled;
+	
+	public TextSearch(@NonNull TextModel model, @NonNull String pattern, boolean ignoreCase) {
+		this(model.snapshot(), pattern, ignoreCase);
+	}
+	
+	public TextSearch(@NonNull TextSnapshot snapshot, @NonNull String pattern, boolean ignoreCase) {
+		if (pattern.isEmpty())
+			throw new IllegalArgumentException("Empty search pattern");
+		
+		this.snapshot = snapshot;
+		this.ignoreCase = ignoreCase;
+		this.pattern = pattern.toCharArray();
+		if (ignoreCase) {
+			for (int i = 0; i < this.pattern.length; i++) {
+				this.pattern[i] = fold(this.pattern[i]);
+			}
+		}
+		selfOverlapping = isSelfOverlapping(this.pattern);
+	}
+	
+	@NonNull
+	public TextSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	@NonNull
+	public LongArrayList findAll() {
+		return findAll(null);
+	}
+	
+	@NonNull
+	public LongArrayList findAll(@Nullable Listener listener) {
+		int length = snapshot.getLength();
+		LongArrayList[] results = new LongArrayList[Math.max((length + CHUNK_SIZE - 1) / CHUNK_SIZE, 1)];
+		ForkJoinPool pool = results.length > 1 && !selfOverlapping ? TextUtils.getPool() : null;
+		if (pool != null) {
+			pool.invoke(new SearchTask(listener, results, 0, results.length));
+		} else {
+			int from = 0;
+			for (int i = 0; i < results.length; i++) {
+				searchChunk(listener, results, i, from);
+				LongArrayList result = results[i];
+				if (result.size() > 0)
+					from = IntPair.first(result.get(result.size() - 1)) + pattern.length;
+			}
+		}
+		
+		if (cancelled)
+			throw new CancellationException();
+		
+		int total = 0;
+		for (LongArrayList result : results) {
+			total += result.size();
+		}
+		
+		LongArrayList matches = new LongArrayList(Math.max(total, 1));
+		for (LongArrayList result : results) {
+			for (int i = 0; i < result.size(); i++) {
+				matches.add(result.get(i));
+			}
+		}
+		return matches;
+	}
+	
+	private void searchChunk(@Nullable Listener listener, @NonNull LongArrayList[] results, int chunk, int from) {
+		LongArrayList matches = new LongArrayList();
+		results[chunk] = matches;
+		if (cancelled)
+			return;
+		
+		int length = snapshot.getLength();
+		int start = Math.max(chunk * CHUNK_SIZE, from);
+		int end = Math.min(chunk * CHUNK_SIZE + CHUNK_SIZE, length);
+		int textEnd = Math.min(end + pattern.length - 1, length);
+		if (textEnd - start < pattern.length)
+			return;
+		
+		Segment segment = Segment.obtain();
+		try {
+			snapshot.getContent().getText(start, textEnd - start, segment);
+			char[] text = segment.array;
+			int offset = segment.offset;
+			int last = Math.min(end, textEnd - pattern.length + 1) - start;
+			char first = pattern[0];
+			for (int i = 0; i < last; i++) {
+				if ((i & 0xffff) == 0 && cancelled)
+					return;
+				
+				char c = text[offset + i];
+				if ((ignoreCase ? fold(c) : c) != first)
+					continue;
+				
+				int j = 1;
+				while (j < pattern.length) {
+					c = text[offset + i + j];
+					if ((ignoreCase ? fold(c) : c) != pattern[j])
+						break;
+					j++;
+				}
+				if (j == pattern.length) {
+					matches.add(IntPair.of(start + i, pattern.length));
+					i += pattern.length - 1;
+				}
+			}
+		} finally {
+			Segment.release(segment);
+		}
+		
+		if (listener != null && matches.size() > 0 && !cancelled)
+			listener.matchesFound(this, matches);
+	}
+	
+	private static boolean isSelfOverlapping(@NonNull char[] pattern) {
+		for (int shift = 1; shift < pattern.length; shift++) {
+			int i = shift;
+			while (i < pattern.length && pattern[i] == pattern[i - shift])
+				i++;
+			if (i == pattern.length)
+				return true;
+		}
+		return false;
+	}
+	
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+	
+	public interface Listener {
+		void matchesFound(@NonNull TextSearch search, @NonNull LongArrayList matches);
+	}
+	
+	private final class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 8494629299069725062L;
+		
+		private final Listener listener;
+		private final LongArrayList[] results;
+		private final int from;
+		private final int to;
+		
+		SearchTask(Listener listener, LongArrayList[] results, int from, int to) {
+			this.listener = listener;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new SearchTask(listener, results, from, mid),
+						new SearchTask(listener, results, mid, to));
+			} else {
+				searchChunk(listener, results, from, 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+public final class TextSnapshot {
+	private final long version;
+	private final Content content;
+	private final LineManager lineManager;
+	
+	TextSnapshot(long version, @NonNull Content content, @NonNull LineManager lineManager) {
+		this.version = version;
+		this.content = content;
+		this.lineManager = lineManager;
+	}
+	
+	@NonNull
+	Content getContent() {
+		return content;
+	}
+	
+	@NonNull
+	LineManager getLineManager() {
+		return lineManager;
+	}
+	
+	public long getVersion() {
+		return version;
+	}
+	
+	public int getLength() {
+		return content.getLength();
+	}
+	
+	public char charAt(int offset) {
+		if (offset < 0 || offset >= content.getLength())
+			throw new ArrayIndexOutOfBoundsException(offset);
+		
+		return content.charAt(offset);
+	}
+	
+	@NonNull
+	public String getText() {
+		return content.getText();
+	}
+	
+	@NonNull
+	public String getText(int start, int length) {
+		checkRange(start, length);
+		return content.getText(start, length);
+	}
+	
+	public void getText(int start, int length, @NonNull Segment segment) {
+		checkRange(start, length);
+		content.getText(start, length, segment);
+	}
+	
+	@NonNull
+	public CharSequence getSequence(int start, int length) {
+		checkRange(start, length);
+		return content.getSequence(start, length);
+	}
+	
+	@NonNull
+	public CharSequence getCharSequence() {
+		return getCharSequence(0, content.getLength());
+	}
+	
+	@NonNull
+	public CharSequence getCharSequence(int start, int end) {
+		checkRange(start, end - start);
+		if (content instanceof TextContent)
+			return ((TextContent) content).getContentSequence(start, end);
+		
+		return new ContentSequence(content, start, end);
+	}
+	
+	public int getLineCount() {
+		return lineManager.getLineCount();
+	}
+	
+	public int getLineOfOffset(int offset) {
+		if (offset < 0 || offset > content.getLength())
+			throw new ArrayIndexOutOfBoundsException(offset);
+		
+		return lineManager.getLineOfOffset(offset);
+	}
+	
+	public int getLineStartOffset(int line) {
+		checkLine(line);
+		return line == 0 ? 0 : lineManager.getLineEndOffset(line - 1);
+	}
+	
+	public int getLineEndOffset(int line) {
+		checkLine(line);
+		return lineManager.getLineEndOffset(line);
+	}
+	
+	public int getLineLength(int line) {
+		return getLineEndOffset(line) - getLineStartOffset(line) - 1;
+	}
+	
+	@NonNull
+	public String getLineText(int line) {
+		int start = getLineStartOffset(line);
+		return content.getText(start, lineManager.getLineEndOffset(line) - start - 1);
+	}
+	
+	public void getLineText(int line, @NonNull Segment segment) {
+		int start = getLineStartOffset(line);
+		content.getText(start, lineManager.getLineEndOffset(line) - start - 1, segment);
+	}
+	
+	private void checkRange(int start, int length) {
+		if (start < 0 || length < 0 || start + length > content.getLength())
+			throw new ArrayIndexOutOfBoundsException(start + ":" + length);
+	}
+	
+	private void checkLine(int line) {
+		if (line < 0 || line >= lineManager.getLineCount())
+			throw new ArrayIndexOutOfBoundsException(line);
+	}
+}
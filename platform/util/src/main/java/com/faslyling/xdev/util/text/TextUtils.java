@@ -0,0 +1,48 @@
+package com.faslyling.xdev.util.text;
+
+import static java.lang.System.arraycopy;
+
+import androidx.annotation.NonNull;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+final class TextUtils {
+	private static ForkJoinPool pool;
+	
+	private TextUtils() {
+	}
+	
+	static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			int parallelism = Runtime.getRuntime().availableProcessors();
+			if (parallelism < 2)
+				return null;
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+	
+	static void getChars(@NonNull CharSequence text, int start, int end, @NonNull char[] dest, int destOffset) {
+		if (text instanceof String) {
+			((String) text).getChars(start, end, dest, destOffset);
+		} else if (text instanceof StringBuilder) {
+			((StringBuilder) text).getChars(start, end, dest, destOffset);
+		} else if (text instanceof StringBuffer) {
+			((StringBuffer) text).getChars(start, end, dest, destOffset);
+		} else if (text instanceof Segment) {
+			Segment segment = (Segment) text;
+			arraycopy(segment.array, segment.offset + start, dest, destOffset, end - start);
+		} else if (text instanceof TextCharSequence) {
+			((TextCharSequence) text).getChars(start, end, dest, destOffset);
+		} else if (text instanceof CharBuffer) {
+			CharBuffer buffer = ((CharBuffer) text).duplicate();
+			buffer.position(buffer.position() + start);
+			buffer.get(dest, destOffset, end - start);
+		} else {
+			for (int i = start; i < end; i++) {
+				dest[destOffset++] = text.charAt(i);
+			}
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package com.faslyling.xdev.util.text;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntArrayList;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TrigramIndex implements ModelListener {
+	private static final int MIN_COMPACT_SIZE = 4096;
+	private static final int MAX_INCREMENTAL_LINES = 1024;
+	private static final String META_CHARS = ".[]{}()*+?^$|\\";
+	private static final String UNSUPPORTED_ESCAPES = "xu0pPcNkQ";
+	private static final Comparator<IntArrayList> SIZE_ORDER = new Comparator<IntArrayList>() {
+		@Override
+		public int compare(IntArrayList l1, IntArrayList l2) {
+			return Integer.compare(l1.size(), l2.size());
+		}
+	};
+	
+	private final TextModel model;
+	private final Segment lineText = new Segment();
+	private final IntArrayList lineIds = new IntArrayList();
+	private final IntArrayList postingCounts = new IntArrayList();
+	private long[] keys;
+	private IntArrayList[] postings;
+	private int keyCount;
+	private long livePostings;
+	private long deadPostings;
+	private boolean attached;
+	private boolean rebuildPending;
+	
+	public TrigramIndex(@NonNull TextModel model) {
+		this.model = model;
+	}
+	
+	public void attach() {
+		try {
+			model.writeLock();
+			if (attached)
+				return;
+			
+			rebuild();
+			model.addModelListener(this);
+			attached = true;
+		} finally {
+			model.writeUnlock();
+		}
+	}
+	
+	public void detach() {
+		try {
+			model.writeLock();
+			model.removeModelListener(this);
+			attached = false;
+			keys = null;
+			postings = null;
+			lineIds.clear();
+			postingCounts.clear();
+		} finally {
+			model.writeUnlock();
+		}
+	}
+	
+	@NonNull
+	public IntArrayList findLines(@NonNull String literal, boolean ignoreCase) {
+		try {
+			model.readLock();
+			checkAttached();
+			
+			IntArrayList candidates = candidateLines(literal);
+			IntArrayList lines = new IntArrayList(candidates.size());
+			for (int i = 0; i < candidates.size(); i++) {
+				int line = candidates.get(i);
+				String text = model.getLineText(line);
+				if (ignoreCase ? containsIgnoreCase(text, literal) : text.contains(literal))
+					lines.add(line);
+			}
+			return lines;
+		} finally {
+			model.readUnlock();
+		}
+	}
+	
+	@NonNull
+	public IntArrayList findLines(@NonNull Pattern pattern) {
+		try {
+			model.readLock();
+			checkAttached();
+			
+			String literal = (pattern.flags() & Pattern.LITERAL) != 0 ? pattern.pattern()
+					: (pattern.flags() & Pattern.COMMENTS) != 0 ? "" : requiredLiteral(pattern.pattern());
+			IntArrayList candidates = candidateLines(literal);
+			IntArrayList lines = new IntArrayList(candidates.size());
+			Matcher matcher = pattern.matcher("");
+			Segment segment = new Segment();
+			for (int i = 0; i < candidates.size(); i++) {
+				int line = candidates.get(i);
+				model.getLineText(line, segment);
+				if (matcher.reset(segment).find())
+					lines.add(line);
+			}
+			return lines;
+		} finally {
+			model.readUnlock();
+		}
+	}
+	
+	@NonNull
+	public IntArrayList candidateLines(@NonNull String literal) {
+		try {
+			model.readLock();
+			checkAttached();
+			
+			int lineCount = lineIds.size();
+			if (literal.length() < 3) {
+				IntArrayList lines = new IntArrayList(lineCount);
+				for (int line = 0; line < lineCount; line++) {
+					lines.add(line);
+				}
+				return lines;
+			}
+			
+			long[] trigrams = new long[literal.length() - 2];
+			for (int i = 0; i < trigrams.length; i++) {
+				trigrams[i] = trigram(literal.charAt(i), literal.charAt(i + 1), literal.charAt(i + 2));
+			}
+			Arrays.sort(trigrams);
+			
+			IntArrayList[] lists = new IntArrayList[trigrams.length];
+			int listCount = 0;
+			for (int i = 0; i < trigrams.length; i++) {
+				if (i > 0 && trigrams[i] == trigrams[i - 1])
+					continue;
+				IntArrayList list = postings[slot(trigrams[i])];
+				if (list == null)
+					return new IntArrayList(0);
+				lists[listCount++] = list;
+			}
+			Arrays.sort(lists, 0, listCount, SIZE_ORDER);
+			
+			int[] marks = new int[postingCounts.size()];
+			for (int i = 0; i < listCount; i++) {
+				IntArrayList list = lists[i];
+				for (int j = 0; j < list.size(); j++) {
+					int id = list.get(j);
+					if (marks[id] == i)
+						marks[id] = i + 1;
+				}
+			}
+			
+			IntArrayList lines = new IntArrayList();
+			for (int line = 0; line < lineCount; line++) {
+				if (marks[lineIds.get(line)] == listCount)
+					lines.add(line);
+			}
+			return lines;
+		} finally {
+			model.readUnlock();
+		}
+	}
+	
+	@Override
+	public void textSet(@NonNull TextModel model) {
+		rebuild();
+	}
+	
+	@Override
+	public void textPreInserted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		if (numLines > MAX_INCREMENTAL_LINES)
+			rebuildPending = true;
+		else
+			removeLine(startLine);
+	}
+	
+	@Override
+	public void textInserted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		if (rebuildPending) {
+			rebuild();
+			return;
+		}
+		
+		lineIds.insertRange(startLine + 1, numLines);
+		for (int line = startLine; line <= startLine + numLines; line++) {
+			lineIds.set(line, addLine(line));
+		}
+		compactIfNeeded();
+	}
+	
+	@Override
+	public void textPreDeleted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		if (numLines > MAX_INCREMENTAL_LINES) {
+			rebuildPending = true;
+			return;
+		}
+		
+		for (int line = startLine; line <= startLine + numLines; line++) {
+			removeLine(line);
+		}
+		lineIds.removeRange(startLine + 1, startLine + numLines + 1);
+	}
+	
+	@Override
+	public void textDeleted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		if (rebuildPending) {
+			rebuild();
+			return;
+		}
+		
+		lineIds.set(startLine, addLine(startLine));
+		compactIfNeeded();
+	}
+	
+	@Override
+	public void transactionComplete(@NonNull TextModel model) {
+	}
+	
+	@Override
+	public void foldLevelChanged(@NonNull TextModel model, int startLine, int endLine) {
+	}
+	
+	@Override
+	public void foldHandlerChanged(@NonNull TextModel model) {
+	}
+	
+	private void checkAttached() {
+		if (!attached)
+			throw new IllegalStateException("Trigram index is not attached");
+	}
+	
+	private void rebuild() {
+		keys = new long[1024];
+		postings = new IntArrayList[1024];
+		keyCount = 0;
+		livePostings = deadPostings = 0;
+		rebuildPending = false;
+		lineIds.clear();
+		postingCounts.clear();
+		
+		int lineCount = model.getLineCount();
+		for (int line = 0; line < lineCount; line++) {
+			lineIds.add(addLine(line));
+		}
+	}
+	
+	private void compactIfNeeded() {
+		if (deadPostings > MIN_COMPACT_SIZE && deadPostings > livePostings)
+			rebuild();
+	}
+	
+	private int addLine(int line) {
+		int id = postingCounts.size();
+		model.getLineText(line, lineText);
+		int count = 0;
+		char[] text = lineText.array;
+		for (int i = lineText.offset, end = lineText.offset + lineText.count - 2; i < end; i++) {
+			long key = trigram(text[i], text[i + 1], text[i + 2]);
+			int slot = slot(key);
+			IntArrayList list = postings[slot];
+			if (list == null) {
+				list = new IntArrayList(4);
+				postings[slot] = list;
+				keys[slot] = key;
+				if (++keyCount * 2 > keys.length)
+					grow();
+			}
+			if (list.isEmpty() || list.get(list.size() - 1) != id) {
+				list.add(id);
+				count++;
+			}
+		}
+		postingCounts.add(count);
+		livePostings += count;
+		return id;
+	}
+	
+	private void removeLine(int line) {
+		int count = postingCounts.get(lineIds.get(line));
+		livePostings -= count;
+		deadPostings += count;
+	}
+	
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int) (key ^ (key >>> 21) ^ (key >>> 42)) * 0x9E3779B1 >>> 7 & mask;
+		while (postings[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void grow() {
+		long[] oldKeys = keys;
+		IntArrayList[] oldPostings = postings;
+		keys = new long[oldKeys.length * 2];
+		postings = new IntArrayList[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldPostings[i] != null) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				postings[slot] = oldPostings[i];
+			}
+		}
+	}
+	
+	private static long trigram(char c1, char c2, char c3) {
+		return (long) fold(c1) << 32 | (long) fold(c2) << 16 | fold(c3);
+	}
+	
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+	
+	private static boolean containsIgnoreCase(@NonNull String text, @NonNull String literal) {
+		for (int i = 0, last = text.length() - literal.length(); i <= last; i++) {
+			if (text.regionMatches(true, i, literal, 0, literal.length()))
+				return true;
+		}
+		return false;
+	}
+	
+	@NonNull
+	static String requiredLiteral(@NonNull String regex) {
+		if (regex.indexOf('|') != -1)
+			return "";
+		
+		String best = "";
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\' && i + 1 < regex.length()) {
+				char next = regex.charAt(++i);
+				if (UNSUPPORTED_ESCAPES.indexOf(next) != -1)
+					return "";
+				if (depth == 0 && META_CHARS.indexOf(next) != -1) {
+					run.append(next);
+					continue;
+				}
+			} else if (c == '[') {
+				int close = regex.indexOf(']', i + 2);
+				i = close == -1 ? regex.length() : close;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '*' || c == '?' || c == '{') {
+				if (run.length() > 0)
+					run.setLength(run.length() - 1);
+				if (c == '{') {
+					int close = regex.indexOf('}', i + 1);
+					i = close == -1 ? regex.length() : close;
+				}
+			} else if (depth == 0 && META_CHARS.indexOf(c) == -1) {
+				run.append(c);
+				continue;
+			}
+			
+			if (run.length() > best.length())
+				best = run.toString();
+			run.setLength(0);
+		}
+		return run.length() > best.length() ? run.toString() : best;
+	}
+}
@@ -0,0 +1,509 @@
+package com.faslyling.xdev.util.text;
+
+import static java.lang.System.arraycopy;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntArrayList;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class UndoJournal {
+	static final int INSERT = 1;
+	static final int DELETE = 2;
+	static final int BATCH = 3;
+	
+	private static final int WIDE = 0x100;
+	private static final int MERGED = 0x200;
+	private static final int OP_MASK = 0xff;
+	private static final int RECORD_SIZE = 4;
+	private static final int SHARE_DISTANCE = 2;
+	private static final int UNIT_SIZE = 3 * 4;
+	
+	private int[] records = new int[16 * RECORD_SIZE];
+	private int recordCount;
+	private byte[] text = new byte[256];
+	private int textLength;
+	
+	private int[] unitRecords = new int[16];
+	private int[] unitTexts = new int[16];
+	private int[] unitTiers = new int[16];
+	private int firstUnit;
+	private int unitCount;
+	
+	public int getUnitCount() {
+		return unitCount - firstUnit;
+	}
+	
+	public int getUnitStart(int unit) {
+		return unitRecords[firstUnit + unit];
+	}
+	
+	public int getUnitEnd(int unit) {
+		unit += firstUnit;
+		return unit + 1 < unitCount ? unitRecords[unit + 1] : recordCount;
+	}
+	
+	public int getTier(int unit) {
+		return unitTiers[firstUnit + unit];
+	}
+	
+	public long getSize() {
+		if (firstUnit == unitCount)
+			return 0;
+		
+		return (long) (recordCount - unitRecords[firstUnit]) * RECORD_SIZE * 4
+				+ textLength - unitTexts[firstUnit] + (long) (unitCount - firstUnit) * UNIT_SIZE;
+	}
+	
+	public int getRecordCount() {
+		return recordCount;
+	}
+	
+	public int getOp(int record) {
+		return records[record * RECORD_SIZE] & OP_MASK;
+	}
+	
+	public int getOffset(int record) {
+		return records[record * RECORD_SIZE + 1];
+	}
+	
+	public boolean isMerged(int record) {
+		return (records[record * RECORD_SIZE] & MERGED) != 0;
+	}
+	
+	public int getLength(int record) {
+		return records[record * RECORD_SIZE + 3];
+	}
+	
+	public void clear() {
+		recordCount = textLength = 0;
+		firstUnit = unitCount = 0;
+	}
+	
+	public void write(@NonNull DataOutput out) throws IOException {
+		int units = getUnitCount();
+		int recordBase = units == 0 ? recordCount : unitRecords[firstUnit];
+		int textBase = units == 0 ? textLength : unitTexts[firstUnit];
+		out.writeInt(units);
+		for (int unit = firstUnit; unit < unitCount; unit++) {
+			out.writeInt(unitRecords[unit] - recordBase);
+			out.writeInt(unitTexts[unit] - textBase);
+			out.writeInt(unitTiers[unit]);
+		}
+		
+		out.writeInt(recordCount - recordBase);
+		for (int i = recordBase * RECORD_SIZE; i < recordCount * RECORD_SIZE; i += RECORD_SIZE) {
+			out.writeInt(records[i]);
+			out.writeInt(records[i + 1]);
+			out.writeInt(records[i + 2] - textBase);
+			out.writeInt(records[i + 3]);
+		}
+		
+		out.writeInt(textLength - textBase);
+		out.write(text, textBase, textLength - textBase);
+	}
+	
+	public void read(@NonNull DataInput in) throws IOException {
+		unitCount = in.readInt();
+		firstUnit = 0;
+		int capacity = Math.max(16, unitCount);
+		unitRecords = new int[capacity];
+		unitTexts = new int[capacity];
+		unitTiers = new int[capacity];
+		for (int unit = 0; unit < unitCount; unit++) {
+			unitRecords[unit] = in.readInt();
+			unitTexts[unit] = in.readInt();
+			unitTiers[unit] = in.readInt();
+		}
+		
+		recordCount = in.readInt();
+		records = new int[Math.max(16, recordCount) * RECORD_SIZE];
+		for (int i = 0; i < recordCount * RECORD_SIZE; i++) {
+			records[i] = in.readInt();
+		}
+		
+		textLength = in.readInt();
+		text = new byte[Math.max(256, textLength)];
+		in.readFully(text, 0, textLength);
+	}
+	
+	public void beginUnit() {
+		if (unitCount == unitRecords.length) {
+			unitRecords = Arrays.copyOf(unitRecords, unitCount * 2);
+			unitTexts = Arrays.copyOf(unitTexts, unitCount * 2);
+			unitTiers = Arrays.copyOf(unitTiers, unitCount * 2);
+		}
+		unitRecords[unitCount] = recordCount;
+		unitTexts[unitCount] = textLength;
+		unitTiers[unitCount] = 0;
+		unitCount++;
+	}
+	
+	public void truncate(int units) {
+		int unit = firstUnit + units;
+		if (unit < unitCount) {
+			recordCount = unitRecords[unit];
+			textLength = unitTexts[unit];
+			unitCount = unit;
+		}
+	}
+	
+	public void removeFirstUnit() {
+		firstUnit++;
+		if (firstUnit == unitCount) {
+			clear();
+		} else if (unitRecords[firstUnit] > recordCount - unitRecords[firstUnit]) {
+			int recordBase = unitRecords[firstUnit];
+			int textBase = unitTexts[firstUnit];
+			arraycopy(records, recordBase * RECORD_SIZE, records, 0, (recordCount - recordBase) * RECORD_SIZE);
+			recordCount -= recordBase;
+			for (int i = 2; i < recordCount * RECORD_SIZE; i += RECORD_SIZE) {
+				records[i] -= textBase;
+			}
+			arraycopy(text, textBase, text, 0, textLength - textBase);
+			textLength -= textBase;
+			
+			unitCount -= firstUnit;
+			for (int i = 0; i < unitCount; i++) {
+				unitRecords[i] = unitRecords[firstUnit + i] - recordBase;
+				unitTexts[i] = unitTexts[firstUnit + i] - textBase;
+				unitTiers[i] = unitTiers[firstUnit + i];
+			}
+			firstUnit = 0;
+		}
+	}
+	
+	public int add(int op, int offset, @NonNull CharSequence str, boolean merged) {
+		int length = str.length();
+		if (recordCount * RECORD_SIZE == records.length)
+			records = Arrays.copyOf(records, records.length * 2);
+		
+		int record = recordCount++;
+		int index = record * RECORD_SIZE;
+		if (merged)
+			op |= MERGED;
+		records[index + 1] = offset;
+		records[index + 3] = length;
+		
+		int unitStart = unitCount == 0 ? 0 : unitRecords[unitCount - 1];
+		for (int r = record - 1; r >= unitStart && r >= record - SHARE_DISTANCE; r--) {
+			if (getOp(r) == (op & OP_MASK) && getLength(r) == length && equals(r, str)) {
+				records[index] = records[r * RECORD_SIZE] & WIDE | op;
+				records[index + 2] = records[r * RECORD_SIZE + 2];
+				return record;
+			}
+		}
+		
+		boolean wide = !isLatin1(str, 0, length);
+		records[index] = wide ? op | WIDE : op;
+		records[index + 2] = textLength;
+		write(str, wide);
+		return record;
+	}
+	
+	public void addBatch(int count) {
+		if (recordCount * RECORD_SIZE == records.length)
+			records = Arrays.copyOf(records, records.length * 2);
+		
+		int index = recordCount++ * RECORD_SIZE;
+		records[index] = BATCH;
+		records[index + 1] = count;
+		records[index + 2] = textLength;
+		records[index + 3] = 0;
+	}
+	
+	public boolean append(int record, @NonNull CharSequence str) {
+		int index = record * RECORD_SIZE;
+		boolean wide = (records[index] & WIDE) != 0;
+		int length = records[index + 3];
+		if (record != recordCount - 1 || records[index + 2] + (wide ? length * 2 : length) != textLength)
+			return false;
+		if (!wide && !isLatin1(str, 0, str.length()))
+			return false;
+		
+		write(str, wide);
+		records[index + 3] = length + str.length();
+		return true;
+	}
+	
+	public void collapse(@NonNull IntArrayList groups, int count) {
+		UndoJournal journal = new UndoJournal();
+		int units = getUnitCount();
+		int group = 0;
+		for (int unit = 0; unit < units; unit++) {
+			journal.beginUnit();
+			if (group < groups.size() && groups.get(group) == unit) {
+				int tier = 0;
+				for (int i = unit; i < unit + count; i++) {
+					tier = Math.max(tier, getTier(i));
+				}
+				journal.unitTiers[journal.unitCount - 1] = tier + 1;
+				
+				List<Site> sites = compose(getUnitStart(unit), getUnitEnd(unit + count - 1));
+				journal.addBatch(sites.size());
+				int delta = 0;
+				for (Site site : sites) {
+					journal.add(DELETE, site.offset - delta, site.removed, false);
+					journal.add(INSERT, site.offset - delta, site.inserted, false);
+					delta += site.inserted.length() - site.removed.length();
+				}
+				unit += count - 1;
+				group++;
+			} else {
+				journal.unitTiers[journal.unitCount - 1] = getTier(unit);
+				for (int record = getUnitStart(unit), end = getUnitEnd(unit); record < end; record++) {
+					if (getOp(record) == BATCH)
+						journal.addBatch(getOffset(record));
+					else
+						journal.add(getOp(record), getOffset(record), getString(record), isMerged(record));
+				}
+			}
+		}
+		
+		records = journal.records;
+		recordCount = journal.recordCount;
+		text = journal.text;
+		textLength = journal.textLength;
+		unitRecords = journal.unitRecords;
+		unitTexts = journal.unitTexts;
+		unitTiers = journal.unitTiers;
+		firstUnit = 0;
+		unitCount = journal.unitCount;
+	}
+	
+	@NonNull
+	public List<TextEdit> getEdits(int start, int end, boolean undo) {
+		List<Site> sites = compose(start, end);
+		List<TextEdit> edits = new ArrayList<>(sites.size());
+		int delta = 0;
+		for (Site site : sites) {
+			if (undo)
+				edits.add(new TextEdit(site.offset, site.inserted.length(), site.removed));
+			else
+				edits.add(new TextEdit(site.offset - delta, site.removed.length(), site.inserted));
+			delta += site.inserted.length() - site.removed.length();
+		}
+		return edits;
+	}
+	
+	@NonNull
+	private List<Site> compose(int start, int end) {
+		SiteList sites = new SiteList();
+		for (int record = start; record < end; record++) {
+			switch (getOp(record)) {
+				case INSERT:
+					apply(sites, getOffset(record), 0, "", getString(record));
+					break;
+				case DELETE:
+					apply(sites, getOffset(record), getLength(record), getString(record), "");
+					break;
+				case BATCH:
+					int count = getOffset(record);
+					int delta = 0;
+					for (int i = 0; i < count; i++) {
+						String removed = getString(++record);
+						String inserted = getString(++record);
+						apply(sites, getOffset(record) + delta, removed.length(), removed, inserted);
+						delta += inserted.length() - removed.length();
+					}
+					break;
+			}
+		}
+		return sites.toList();
+	}
+	
+	private static void apply(SiteList sites, int offset, int length, String deleted, String inserted) {
+		int end = offset + length;
+		int first = 0;
+		int high = sites.size();
+		while (first < high) {
+			int mid = (first + high) >>> 1;
+			if (sites.getEnd(mid) < offset)
+				first = mid + 1;
+			else
+				high = mid;
+		}
+		int last = first;
+		while (last < sites.size() && sites.getOffset(last) <= end) {
+			last++;
+		}
+		
+		Site site;
+		if (first == last) {
+			site = new Site(offset, deleted, inserted);
+		} else {
+			StringBuilder removed = new StringBuilder();
+			int pos = offset;
+			for (int i = first; i < last; i++) {
+				int siteOffset = sites.getOffset(i);
+				if (siteOffset > pos)
+					removed.append(deleted, pos - offset, siteOffset - offset);
+				removed.append(sites.get(i).removed);
+				pos = Math.max(pos, sites.getEnd(i));
+			}
+			if (end > pos)
+				removed.append(deleted, pos - offset, length);
+			
+			int firstOffset = sites.getOffset(first);
+			int lastOffset = sites.getOffset(last - 1);
+			String firstInserted = sites.get(first).inserted;
+			String lastInserted = sites.get(last - 1).inserted;
+			StringBuilder text = new StringBuilder();
+			if (offset > firstOffset)
+				text.append(firstInserted, 0, offset - firstOffset);
+			text.append(inserted);
+			if (end < lastOffset + lastInserted.length())
+				text.append(lastInserted, end - lastOffset, lastInserted.length());
+			
+			site = new Site(Math.min(offset, firstOffset), removed.toString(), text.toString());
+			sites.remove(first, last);
+		}
+		
+		sites.shift(first, inserted.length() - length);
+		if (!site.removed.equals(site.inserted))
+			sites.add(first, site);
+	}
+	
+	@NonNull
+	public Segment getText(int record, @NonNull Segment segment) {
+		int index = record * RECORD_SIZE;
+		int start = records[index + 2];
+		int length = records[index + 3];
+		char[] chars = segment.buffer(length);
+		if ((records[index] & WIDE) != 0) {
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) ((text[start + i * 2] & 0xff) << 8 | text[start + i * 2 + 1] & 0xff);
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) (text[start + i] & 0xff);
+			}
+		}
+		segment.array = chars;
+		segment.offset = 0;
+		segment.count = length;
+		return segment;
+	}
+	
+	@NonNull
+	public String getString(int record) {
+		Segment segment = Segment.obtain();
+		try {
+			return getText(record, segment).toString();
+		} finally {
+			Segment.release(segment);
+		}
+	}
+	
+	private boolean equals(int record, CharSequence str) {
+		int index = record * RECORD_SIZE;
+		int start = records[index + 2];
+		int length = records[index + 3];
+		boolean wide = (records[index] & WIDE) != 0;
+		for (int i = 0; i < length; i++) {
+			char c = wide ? (char) ((text[start + i * 2] & 0xff) << 8 | text[start + i * 2 + 1] & 0xff)
+					: (char) (text[start + i] & 0xff);
+			if (c != str.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	private void write(CharSequence str, boolean wide) {
+		int length = str.length();
+		int bytes = wide ? length * 2 : length;
+		if (textLength + bytes > text.length)
+			text = Arrays.copyOf(text, Math.max(textLength + bytes, text.length * 2));
+		
+		if (wide) {
+			for (int i = 0; i < length; i++) {
+				char c = str.charAt(i);
+				text[textLength++] = (byte) (c >>> 8);
+				text[textLength++] = (byte) c;
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				text[textLength++] = (byte) str.charAt(i);
+			}
+		}
+	}
+	
+	private static boolean isLatin1(CharSequence str, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (str.charAt(i) > 0xff)
+				return false;
+		}
+		return true;
+	}
+	
+	private static final class Site {
+		int offset;
+		final String removed;
+		final String inserted;
+		
+		Site(int offset, String removed, String inserted) {
+			this.offset = offset;
+			this.removed = removed;
+			this.inserted = inserted;
+		}
+	}
+	
+	private static final class SiteList {
+		private final ArrayList<Site> sites = new ArrayList<>();
+		private int boundary;
+		private int shift;
+		
+		int size() {
+			return sites.size();
+		}
+		
+		Site get(int index) {
+			return sites.get(index);
+		}
+		
+		int getOffset(int index) {
+			return index < boundary ? sites.get(index).offset : sites.get(index).offset + shift;
+		}
+		
+		int getEnd(int index) {
+			return getOffset(index) + sites.get(index).inserted.length();
+		}
+		
+		void add(int index, Site site) {
+			moveBoundary(index);
+			site.offset -= shift;
+			sites.add(index, site);
+		}
+		
+		void remove(int from, int to) {
+			moveBoundary(from);
+			sites.subList(from, to).clear();
+		}
+		
+		void shift(int from, int delta) {
+			moveBoundary(from);
+			shift += delta;
+		}
+		
+		List<Site> toList() {
+			moveBoundary(sites.size());
+			return sites;
+		}
+		
+		private void moveBoundary(int index) {
+			for (int i = index; i < boundary; i++) {
+				sites.get(i).offset -= shift;
+			}
+			for (int i = boundary; i < index; i++) {
+				sites.get(i).offset += shift;
+			}
+			boundary = index;
+		}
+	}
+}
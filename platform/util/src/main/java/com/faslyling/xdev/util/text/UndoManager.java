@@ -1,83 +1,121 @@
 package com.faslyling.xdev.util.text;
 
+import static com.faslyling.xdev.util.text.UndoJournal.BATCH;
+import static com.faslyling.xdev.util.text.UndoJournal.DELETE;
+import static com.faslyling.xdev.util.text.UndoJournal.INSERT;
+
+import androidx.annotation.NonNull;
+
 import com.faslyling.xdev.util.IntArrayList;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 class UndoManager {
+	private static final int FINE_UNITS = 64;
+	private static final int COLLAPSE_COUNT = 8;
+	private static final int BATCH_STEPS = 16;
 	
 	private final TextModel model;
+	private final UndoJournal journal = new UndoJournal();
 	private Object undoId;
 	private int limit;
+	private long byteLimit = Long.MAX_VALUE;
 	private int undoCount;
 	private int compoundEditCount;
-	private CompoundEdit compoundEdit;
-	private Edit undoFirst;
-	private Edit undoLast;
-	private Edit undoClearDirty;
-	private Edit redoFirst;
-	private Edit redoClearDirty;
+	private boolean compoundEditStarted;
+	private boolean compoundEditHadRedo;
+	private int mergeOp;
+	private int mergeOffset;
+	private int mergeLength;
+	private boolean mergeClearDirty;
+	private int clearDirtyCount = -1;
+	private EditJournal editJournal;
 	
 	public UndoManager(TextModel model) {
 		this.model = model;
 	}
 	
-	public void contentInserted(int offset, String text, boolean clearDirty) {
-		Edit toMerge = getMergeEdit();
+	public void contentInserted(int offset, CharSequence text, boolean clearDirty) {
+		if (editJournal != null)
+			editJournal.inserted(offset, text);
 		
-		if (!clearDirty && toMerge instanceof InsertEdit && redoFirst == null) {
-			InsertEdit ins = (InsertEdit) toMerge;
-			if (ins.offset == offset) {
-				ins.str = text.concat(ins.str);
+		if (limit <= 0)
+			return;
+		
+		int len = text.length();
+		if (!clearDirty && canMerge() && mergeOp == INSERT) {
+			if (mergeOffset + mergeLength == offset) {
+				int last = journal.getRecordCount() - 1;
+				if (journal.getOffset(last) + journal.getLength(last) != offset || !journal.append(last, text))
+					journal.add(INSERT, offset, text, true);
+				mergeLength += len;
+				trimToByteLimit();
 				return;
-			} else if (ins.offset + ins.str.length() == offset) {
-				ins.str = ins.str.concat(text);
+			} else if (mergeOffset == offset) {
+				journal.add(INSERT, offset, text, true);
+				mergeLength += len;
+				trimToByteLimit();
 				return;
 			}
 		}
 		
-		InsertEdit ins = new InsertEdit(offset, text);
-		
-		if (clearDirty) {
-			redoClearDirty = getLastEdit();
-			undoClearDirty = ins;
-		}
-		
-		if (compoundEdit != null)
-			compoundEdit.add(this, ins);
-		else {
-			reviseUndoId();
-			addEdit(ins);
-		}
+		boolean replace = compoundEditStarted && mergeOp == DELETE && mergeOffset == offset
+				&& !clearDirty && !mergeClearDirty;
+		beginEdit(clearDirty);
+		journal.add(INSERT, offset, text, false);
+		setMergeEdit(replace ? 0 : INSERT, offset, len, clearDirty);
+		trimToByteLimit();
 	}
 	
-	public void contentRemoved(int offset, int length, String text, boolean clearDirty) {
-		Edit toMerge = getMergeEdit();
+	public void contentRemoved(int offset, int length, CharSequence text, boolean clearDirty) {
+		if (editJournal != null)
+			editJournal.removed(offset, length);
 		
-		if (!clearDirty && toMerge instanceof DeleteEdit && redoFirst == null) {
-			DeleteEdit rem = (DeleteEdit) toMerge;
-			if (rem.offset == offset) {
-				rem.str = rem.str.concat(text);
+		if (limit <= 0)
+			return;
+		
+		if (!clearDirty && canMerge() && mergeOp == DELETE) {
+			if (mergeOffset == offset) {
+				int last = journal.getRecordCount() - 1;
+				if (journal.getOffset(last) != offset || !journal.append(last, text))
+					journal.add(DELETE, offset, text, true);
+				mergeLength += length;
+				trimToByteLimit();
 				return;
-			} else if (offset + length == rem.offset) {
-				String newStr = text.concat(rem.str);
-				rem.offset = offset;
-				rem.str = newStr;
+			} else if (offset + length == mergeOffset) {
+				journal.add(DELETE, offset, text, true);
+				mergeOffset = offset;
+				mergeLength += length;
+				trimToByteLimit();
 				return;
 			}
 		}
 		
-		DeleteEdit rem = new DeleteEdit(offset, text.intern());
+		beginEdit(clearDirty);
+		journal.add(DELETE, offset, text, false);
+		setMergeEdit(DELETE, offset, length, clearDirty);
+		trimToByteLimit();
+	}
+	
+	public void contentEdited(IntArrayList offsets, String[] removed, String[] inserted, boolean clearDirty) {
+		if (editJournal != null)
+			editJournal.edited(offsets, removed, inserted);
 		
-		if (clearDirty) {
-			redoClearDirty = getLastEdit();
-			undoClearDirty = rem;
-		}
+		if (limit <= 0)
+			return;
 		
-		if (compoundEdit != null)
-			compoundEdit.add(this, rem);
-		else {
-			reviseUndoId();
-			addEdit(rem);
+		beginEdit(clearDirty);
+		journal.addBatch(offsets.size());
+		for (int i = 0; i < offsets.size(); i++) {
+			journal.add(DELETE, offsets.get(i), removed[i], false);
+			journal.add(INSERT, offsets.get(i), inserted[i], false);
 		}
+		mergeOp = 0;
+		trimToByteLimit();
 	}
 	
 	public void setLimit(int limit) {
@@ -88,350 +126,347 @@ class UndoManager {
 		return limit;
 	}
 	
-	public void clear() {
-		undoFirst = undoLast = redoFirst = null;
-		undoCount = 0;
+	public void setByteLimit(long byteLimit) {
+		this.byteLimit = byteLimit;
 	}
 	
-	public void resetClearDirty() {
-		redoClearDirty = getLastEdit();
-		if (redoFirst instanceof CompoundEdit)
-			undoClearDirty = ((CompoundEdit) redoFirst).first;
-		else
-			undoClearDirty = redoFirst;
+	public long getByteLimit() {
+		return byteLimit;
 	}
 	
-	private Edit getLastEdit() {
-		if (undoLast instanceof CompoundEdit)
-			return ((CompoundEdit) undoLast).last;
-		else
-			return undoLast;
+	public long getSize() {
+		return journal.getSize();
 	}
 	
-	private Edit getMergeEdit() {
-		return (compoundEdit != null ? compoundEdit.last : getLastEdit());
+	public void setEditJournal(EditJournal editJournal) {
+		this.editJournal = editJournal;
 	}
 	
+	public void clear() {
+		journal.clear();
+		undoCount = 0;
+		mergeOp = 0;
+		compoundEditStarted = false;
+	}
 	
-	public boolean canUndo() {
-		return undoLast != null;
+	public void resetClearDirty() {
+		clearDirtyCount = compoundEditCount != 0 && compoundEditStarted ? -1 : undoCount;
+		if (editJournal != null)
+			editJournal.reset(model.getLength(), this);
 	}
 	
-	public boolean canRedo() {
-		return redoFirst != null;
+	public void write(@NonNull DataOutput out) throws IOException {
+		out.writeInt(limit);
+		out.writeLong(byteLimit);
+		out.writeInt(undoCount);
+		out.writeInt(clearDirtyCount);
+		out.writeInt(compoundEditCount);
+		out.writeBoolean(compoundEditStarted);
+		out.writeBoolean(compoundEditHadRedo);
+		out.writeInt(mergeOp);
+		out.writeInt(mergeOffset);
+		out.writeInt(mergeLength);
+		out.writeBoolean(mergeClearDirty);
+		journal.write(out);
 	}
 	
-	public void undo() {
-		if (insideCompoundEdit())
-			throw new InternalError("Unbalanced begin/endCompoundEdit()");
-		
-		if (undoLast != null) {
-			reviseUndoId();
-			undoCount--;
-			
-			undoLast.undo(this);
-			redoFirst = undoLast;
-			undoLast = undoLast.prev;
-			if (undoLast == null)
-				undoFirst = null;
-		}
+	public void read(@NonNull DataInput in) throws IOException {
+		limit = in.readInt();
+		byteLimit = in.readLong();
+		undoCount = in.readInt();
+		clearDirtyCount = in.readInt();
+		compoundEditCount = in.readInt();
+		compoundEditStarted = in.readBoolean();
+		compoundEditHadRedo = in.readBoolean();
+		mergeOp = in.readInt();
+		mergeOffset = in.readInt();
+		mergeLength = in.readInt();
+		mergeClearDirty = in.readBoolean();
+		journal.read(in);
+		reviseUndoId();
 	}
 	
-	public void redo() {
-		if (insideCompoundEdit())
-			throw new InternalError("Unbalanced begin/endCompoundEdit()");
+	private boolean canMerge() {
+		if (compoundEditCount != 0 && (!compoundEditStarted || compoundEditHadRedo))
+			return false;
 		
-		if (redoFirst != null) {
-			reviseUndoId();
-			undoCount++;
-			
-			redoFirst.redo(this);
-			undoLast = redoFirst;
-			if (undoFirst == null)
-				undoFirst = undoLast;
-			redoFirst = redoFirst.next;
-		}
+		return undoCount != 0 && undoCount == journal.getUnitCount();
 	}
 	
-	public boolean insideCompoundEdit() {
-		return compoundEditCount != 0;
+	private void setMergeEdit(int op, int offset, int length, boolean clearDirty) {
+		mergeOp = op;
+		mergeOffset = offset;
+		mergeLength = length;
+		mergeClearDirty = clearDirty;
 	}
 	
-	public void beginCompoundEdit() {
-		if (compoundEditCount == 0) {
-			compoundEdit = new CompoundEdit();
-			reviseUndoId();
+	private void setMergeEdit(int unitStart, int last) {
+		int start = last;
+		while (start > unitStart && journal.isMerged(start)) {
+			start--;
+		}
+		int op = journal.getOp(start);
+		int offset = journal.getOffset(start);
+		int length = 0;
+		for (int record = start; record <= last; record++) {
+			offset = Math.min(offset, journal.getOffset(record));
+			length += journal.getLength(record);
+		}
+		
+		if (op == INSERT && start > unitStart) {
+			int previous = start - 1;
+			int previousOffset = journal.getOffset(previous);
+			while (previous > unitStart && journal.isMerged(previous)) {
+				previousOffset = Math.min(previousOffset, journal.getOffset(--previous));
+			}
+			if (journal.getOp(previous) == DELETE && previousOffset == offset)
+				op = 0;
 		}
-		
-		compoundEditCount++;
+		setMergeEdit(op, offset, length, false);
 	}
 	
-	public void endCompoundEdit() {
-		if (compoundEditCount == 0) {
+	private void beginEdit(boolean clearDirty) {
+		if (compoundEditCount != 0 && compoundEditStarted) {
+			if (clearDirty)
+				clearDirtyCount = -1;
 			return;
-		} else if (compoundEditCount == 1) {
-			if (compoundEdit.first != null) {
-				if (compoundEdit.first == compoundEdit.last)
-					addEdit(compoundEdit.first);
-				else
-					addEdit(compoundEdit);
-			}
-			compoundEdit = null;
 		}
 		
-		compoundEditCount--;
-	}
-	
-	private void addEdit(Edit edit) {
-		if (undoFirst == null)
-			undoFirst = undoLast = edit;
-		else {
-			undoLast.next = edit;
-			edit.prev = undoLast;
-			undoLast = edit;
+		if (clearDirtyCount > undoCount)
+			clearDirtyCount = -1;
+		if (clearDirty)
+			clearDirtyCount = undoCount;
+		
+		if (compoundEditCount == 0) {
+			reviseUndoId();
+		} else {
+			compoundEditStarted = true;
+			compoundEditHadRedo = canRedo();
 		}
 		
-		redoFirst = null;
+		journal.truncate(undoCount);
+		journal.beginUnit();
 		undoCount++;
 		
 		while (undoCount > limit) {
 			undoCount--;
-			
-			if (undoFirst == undoLast)
-				undoFirst = undoLast = null;
-			else {
-				undoFirst.next.prev = null;
-				undoFirst = undoFirst.next;
+			journal.removeFirstUnit();
+			if (clearDirtyCount >= 0)
+				clearDirtyCount--;
+		}
+	}
+	
+	private void trimToByteLimit() {
+		if (journal.getSize() <= byteLimit)
+			return;
+		
+		long target = byteLimit - byteLimit / 4;
+		collapse(undoCount - FINE_UNITS);
+		
+		while (journal.getSize() > target && journal.getUnitCount() > 1) {
+			undoCount--;
+			journal.removeFirstUnit();
+			if (clearDirtyCount >= 0)
+				clearDirtyCount--;
+		}
+		
+		if (journal.getSize() > byteLimit) {
+			journal.clear();
+			clearDirtyCount = clearDirtyCount == undoCount ? 0 : -1;
+			undoCount = 0;
+			mergeOp = 0;
+			compoundEditStarted = false;
+		}
+	}
+	
+	private void collapse(int end) {
+		IntArrayList groups = new IntArrayList();
+		int unit = 0;
+		while (unit + COLLAPSE_COUNT <= end) {
+			int tier = journal.getTier(unit);
+			int next = unit + 1;
+			while (next < unit + COLLAPSE_COUNT && journal.getTier(next) == tier) {
+				next++;
+			}
+			if (next == unit + COLLAPSE_COUNT) {
+				groups.add(unit);
+				unit += COLLAPSE_COUNT;
+			} else {
+				unit = next;
 			}
 		}
+		if (groups.isEmpty())
+			return;
+		
+		journal.collapse(groups, COLLAPSE_COUNT);
+		for (int i = groups.size() - 1; i >= 0; i--) {
+			int first = groups.get(i);
+			if (clearDirtyCount > first && clearDirtyCount < first + COLLAPSE_COUNT)
+				clearDirtyCount = -1;
+			else if (clearDirtyCount >= first + COLLAPSE_COUNT)
+				clearDirtyCount -= COLLAPSE_COUNT - 1;
+		}
+		undoCount -= groups.size() * (COLLAPSE_COUNT - 1);
 	}
 	
-	private void reviseUndoId() {
-		undoId = new Object();
+	public boolean canUndo() {
+		return undoCount > 0;
 	}
 	
-	public Object getUndoId() {
-		return undoId;
+	public boolean canRedo() {
+		return undoCount < journal.getUnitCount();
 	}
 	
-	private ReplaceEdit getReplaceFromRemoveInsert(Edit lastElement, Edit newElement) {
-		if (lastElement instanceof DeleteEdit && newElement instanceof InsertEdit) {
-			
-			if (lastElement == undoClearDirty || newElement == undoClearDirty)
-				return null;
-			
-			assert newElement != redoClearDirty;
-			assert lastElement != redoClearDirty;
+	public void undo() {
+		if (insideCompoundEdit())
+			throw new InternalError("Unbalanced begin/endCompoundEdit()");
+		
+		if (undoCount > 0) {
+			reviseUndoId();
+			undoCount--;
 			
-			DeleteEdit rem = (DeleteEdit) lastElement;
-			InsertEdit ins = (InsertEdit) newElement;
+			int start = journal.getUnitStart(undoCount);
+			int end = journal.getUnitEnd(undoCount);
+			IntArrayList steps = getSteps(start, end);
+			if (steps.size() > BATCH_STEPS) {
+				model.applyEdits(journal.getEdits(start, end, true));
+			} else {
+				for (int i = steps.size() - 1; i >= 0; i--) {
+					undo(steps.get(i));
+				}
+			}
+			if (editJournal != null)
+				editJournal.undone();
 			
-			if (rem.offset == ins.offset)
-				return new ReplaceEdit(rem.offset, rem.str, ins.str);
+			if (undoCount == clearDirtyCount)
+				model.setDirty(false);
 		}
-		return null;
 	}
 	
-	private CompressedReplaceEdit getCompressedReplaceFromReplaceReplace(Edit lastElement, Edit newElement) {
-		if (newElement instanceof ReplaceEdit) {
-			CompressedReplaceEdit rep;
-			if (lastElement instanceof CompressedReplaceEdit) {
-				rep = (CompressedReplaceEdit) lastElement;
-				return rep.add((ReplaceEdit) newElement);
-			}
+	public void redo() {
+		if (insideCompoundEdit())
+			throw new InternalError("Unbalanced begin/endCompoundEdit()");
+		
+		if (undoCount < journal.getUnitCount()) {
+			reviseUndoId();
 			
-			if (lastElement instanceof ReplaceEdit) {
-				rep = new CompressedReplaceEdit((ReplaceEdit) lastElement);
-				return rep.add((ReplaceEdit) newElement);
+			int start = journal.getUnitStart(undoCount);
+			int end = journal.getUnitEnd(undoCount);
+			IntArrayList steps = getSteps(start, end);
+			if (steps.size() > BATCH_STEPS) {
+				model.applyEdits(journal.getEdits(start, end, false));
+			} else {
+				for (int i = 0; i < steps.size(); i++) {
+					redo(steps.get(i));
+				}
 			}
+			int last = steps.get(steps.size() - 1);
+			undoCount++;
+			if (editJournal != null)
+				editJournal.redone();
+			
+			if (journal.getOp(last) == BATCH)
+				mergeOp = 0;
+			else
+				setMergeEdit(start, last);
+			
+			if (undoCount == clearDirtyCount)
+				model.setDirty(false);
 		}
-		return null;
 	}
 	
+	private IntArrayList getSteps(int start, int end) {
+		IntArrayList steps = new IntArrayList();
+		for (int record = start; record < end; record++) {
+			steps.add(record);
+			if (journal.getOp(record) == BATCH)
+				record += journal.getOffset(record) * 2;
+		}
+		return steps;
+	}
 	
-	private static class InsertEdit extends Edit {
-		int offset;
-		String str;
-		
-		InsertEdit(int offset, String str) {
-			this.offset = offset;
-			this.str = str;
-		}
-		
-		@Override
-		public void undo(UndoManager manager) {
-			manager.model.delete(offset, str.length());
-			if (manager.undoClearDirty == this)
-				manager.model.setDirty(false);
-		}
-		
-		@Override
-		public void redo(UndoManager manager) {
-			manager.model.insert(offset, str);
-			if (manager.redoClearDirty == this)
-				manager.model.setDirty(false);
+	private void undo(int record) {
+		switch (journal.getOp(record)) {
+			case INSERT:
+				model.delete(journal.getOffset(record), journal.getLength(record));
+				break;
+			case DELETE:
+				insert(record);
+				break;
+			case BATCH:
+				int count = journal.getOffset(record);
+				List<TextEdit> edits = new ArrayList<>(count);
+				int delta = 0;
+				for (int i = 0, r = record + 1; i < count; i++, r += 2) {
+					int insertedLength = journal.getLength(r + 1);
+					edits.add(new TextEdit(journal.getOffset(r) + delta, insertedLength, journal.getString(r)));
+					delta += insertedLength - journal.getLength(r);
+				}
+				model.applyEdits(edits);
+				break;
 		}
 	}
 	
-	private static class DeleteEdit extends Edit {
-		int offset;
-		String str;
-		
-		DeleteEdit(int offset, String str) {
-			this.offset = offset;
-			this.str = str;
-		}
-		
-		@Override
-		public void undo(UndoManager manager) {
-			manager.model.insert(offset, str);
-			if (manager.undoClearDirty == this)
-				manager.model.setDirty(false);
-		}
-		
-		@Override
-		public void redo(UndoManager manager) {
-			manager.model.delete(offset, str.length());
-			if (manager.redoClearDirty == this)
-				manager.model.setDirty(false);
+	private void insert(int record) {
+		Segment segment = Segment.obtain();
+		try {
+			model.insert(journal.getOffset(record), journal.getText(record, segment));
+		} finally {
+			Segment.release(segment);
 		}
 	}
 	
-	private static class ReplaceEdit extends Edit {
-		int offset;
-		String strRemove, strInsert;
-		
-		ReplaceEdit(int offset, String strRemove, String strInsert) {
-			this.offset = offset;
-			this.strRemove = strRemove;
-			this.strInsert = strInsert;
-		}
-		
-		@Override
-		public void undo(UndoManager manager) {
-			manager.model.delete(offset, strInsert.length());
-			manager.model.insert(offset, strRemove);
-			assert manager.undoClearDirty != this;
-		}
-		
-		@Override
-		public void redo(UndoManager manager) {
-			manager.model.delete(offset, strRemove.length());
-			manager.model.insert(offset, strInsert);
-			if (manager.redoClearDirty == this)
-				manager.model.setDirty(false);
+	private void redo(int record) {
+		switch (journal.getOp(record)) {
+			case INSERT:
+				insert(record);
+				break;
+			case DELETE:
+				model.delete(journal.getOffset(record), journal.getLength(record));
+				break;
+			case BATCH:
+				int count = journal.getOffset(record);
+				List<TextEdit> edits = new ArrayList<>(count);
+				for (int i = 0, r = record + 1; i < count; i++, r += 2) {
+					edits.add(new TextEdit(journal.getOffset(r), journal.getLength(r), journal.getString(r + 1)));
+				}
+				model.applyEdits(edits);
+				break;
 		}
 	}
 	
-	private static class CompressedReplaceEdit extends ReplaceEdit {
-		IntArrayList offsets;
-		
-		CompressedReplaceEdit(ReplaceEdit r1) {
-			super(r1.offset, r1.strRemove, r1.strInsert);
-			offsets = new IntArrayList(4);
-			offsets.add(r1.offset);
-		}
-		
-		CompressedReplaceEdit add(ReplaceEdit rep) {
-			if (this.strInsert.equals(rep.strInsert) && this.strRemove.equals(rep.strRemove)) {
-				offsets.add(rep.offset);
-				return this;
-			}
-			return null;
+	public boolean insideCompoundEdit() {
+		return compoundEditCount != 0;
+	}
+	
+	public void beginCompoundEdit() {
+		if (compoundEditCount == 0) {
+			compoundEditStarted = false;
+			reviseUndoId();
 		}
 		
-		@Override
-		public void undo(UndoManager manager) {
-			for (int i = offsets.size() - 1; i >= 0; i--) {
-				offset = offsets.get(i);
-				super.undo(manager);
-			}
+		compoundEditCount++;
+		if (editJournal != null)
+			editJournal.compoundEditBegun();
+	}
+	
+	public void endCompoundEdit() {
+		if (compoundEditCount == 0) {
+			return;
+		} else if (compoundEditCount == 1) {
+			compoundEditStarted = false;
 		}
 		
-		@Override
-		public void redo(UndoManager manager) {
-			for (int i = 0; i < offsets.size(); i++) {
-				offset = offsets.get(i);
-				super.redo(manager);
-			}
-		}
+		compoundEditCount--;
+		if (editJournal != null)
+			editJournal.compoundEditEnded();
 	}
 	
-	private abstract static class Edit {
-		Edit prev, next;
-		
-		public abstract void undo(UndoManager manager);
-		
-		public abstract void redo(UndoManager manager);
+	private void reviseUndoId() {
+		undoId = new Object();
 	}
 	
-	private static class CompoundEdit extends Edit {
-		Edit first, last;
-		
-		@Override
-		public void undo(UndoManager manager) {
-			Edit edit = last;
-			while (edit != null) {
-				edit.undo(manager);
-				edit = edit.prev;
-			}
-		}
-		
-		@Override
-		public void redo(UndoManager manager) {
-			Edit edit = first;
-			while (edit != null) {
-				edit.redo(manager);
-				edit = edit.next;
-			}
-		}
-		
-		public void add(UndoManager mgr, Edit edit) {
-			add(edit);
-			if (last.prev != null) {
-				Edit rep = mgr.getReplaceFromRemoveInsert(last.prev, last);
-				if (rep != null)
-					exchangeLastElement(rep);
-			}
-			
-			if (last.prev != null) {
-				Edit rep = mgr.getCompressedReplaceFromReplaceReplace(last.prev, last);
-				if (rep != null)
-					exchangeLastElement(rep);
-			}
-			
-			if (last.prev != null) {
-				Edit rep = mgr.getCompressedReplaceFromReplaceReplace(last.prev, last);
-				if (rep != null)
-					exchangeLastElement(rep);
-			}
-		}
-		
-		private void add(Edit edit) {
-			if (first == null)
-				first = last = edit;
-			else {
-				edit.prev = last;
-				last.next = edit;
-				last = edit;
-			}
-		}
-		
-		private void exchangeLastElement(Edit edit) {
-			if (first == last)
-				first = last = null;
-			else {
-				last.prev.next = null;
-				last = last.prev;
-			}
-			
-			if (first == null || first == last)
-				first = last = edit;
-			else {
-				edit.prev = last.prev;
-				last.prev.next = edit;
-				last = edit;
-			}
-		}
+	public Object getUndoId() {
+		return undoId;
 	}
 }
@@ -0,0 +1,53 @@
+package com.faslyling.xdev.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class PoolsTest {
+	private static final int THREADS = 4;
+	private static final int ACQUIRES = 100000;
+	
+	@Test
+	public void threadLocalPoolCountsEveryAcquire() throws InterruptedException {
+		final Pools.ThreadLocalPool<Object> pool = new Pools.ThreadLocalPool<>(2, 4);
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < ACQUIRES; j++) {
+						Object instance = pool.acquire();
+						pool.release(instance != null ? instance : new Object());
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertEquals(THREADS * ACQUIRES, pool.getHitCount() + pool.getMissCount());
+		assertEquals(THREADS, pool.getMissCount());
+	}
+	
+	@Test
+	public void threadLocalPoolRejectsDoubleRelease() {
+		Pools.ThreadLocalPool<Object> pool = new Pools.ThreadLocalPool<>(2, 4);
+		assertNull(pool.acquire());
+		Object instance = new Object();
+		pool.release(instance);
+		try {
+			pool.release(instance);
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+		assertSame(instance, pool.acquire());
+		assertEquals(1, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+	}
+}
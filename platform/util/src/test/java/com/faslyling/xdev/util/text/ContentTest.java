@@ -0,0 +1,216 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ContentTest {
+	private static final String LATIN_CHARS = "abc \n\t\u00e9\u00ff";
+	private static final String WIDE_CHARS = "ab\n\u20ac\u4e2d";
+	private static final int SEEDS = 4;
+	private static final int OPERATIONS = 1500;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void textContent() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			check(new TextContent(), seed);
+		}
+	}
+	
+	@Test
+	public void chunkedContent() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			check(new ChunkedContent(), seed);
+		}
+	}
+	
+	@Test
+	public void compactContent() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			check(new CompactContent(), seed);
+		}
+	}
+	
+	@Test
+	public void pieceTableContent() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			check(new PieceTableContent(), seed);
+		}
+	}
+	
+	@Test
+	public void ropeContent() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			check(new RopeContent(), seed);
+		}
+	}
+	
+	@Test
+	public void mappedContent() throws IOException {
+		Random random = new Random(0);
+		String text = randomText(random, 300 * 1024, true);
+		File file = File.createTempFile("content", ".txt");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(text.getBytes(UTF_8));
+			} finally {
+				out.close();
+			}
+			
+			MappedContent content = new MappedContent(file, UTF_8);
+			try {
+				assertEquals(text, content.getText());
+				for (int i = 0; i < 2000; i++) {
+					verifyRange(content, text, random, "read " + i);
+				}
+				assertEquals(text, content.snapshot().getText());
+			} finally {
+				content.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	private static void check(Content content, int seed) {
+		Random random = new Random(seed);
+		String name = content.getClass().getSimpleName() + " seed " + seed;
+		StringBuilder expected = new StringBuilder();
+		List<Content> snapshots = new ArrayList<>();
+		List<String> snapshotTexts = new ArrayList<>();
+		boolean wide = false;
+		Segment segment = new Segment();
+		
+		for (int op = 0; op < OPERATIONS; op++) {
+			String message = name + " op " + op;
+			int length = expected.length();
+			int kind = random.nextInt(100);
+			if (kind < 45) {
+				wide |= random.nextInt(200) == 0;
+				String text = randomText(random, randomLength(random), wide);
+				int offset = random.nextInt(length + 1);
+				switch (random.nextInt(3)) {
+					case 0:
+						content.insert(offset, text);
+						break;
+					case 1:
+						content.insert(offset, new StringBuilder(text));
+						break;
+					default:
+						char[] chars = ("xx" + text + "y").toCharArray();
+						content.insert(offset, new Segment(chars, 2, text.length()));
+						break;
+				}
+				expected.insert(offset, text);
+			} else if (kind < 85 && length > 0) {
+				int offset = random.nextInt(length);
+				int count = Math.min(length - offset, randomLength(random));
+				content.delete(offset, count);
+				expected.delete(offset, offset + count);
+			} else if (kind < 87) {
+				wide = random.nextBoolean();
+				String text = randomText(random, random.nextInt(100 * 1024), wide);
+				char[] chars = (text + "zz").toCharArray();
+				content.set(chars, text.length());
+				expected.setLength(0);
+				expected.append(text);
+			} else if (kind < 90) {
+				snapshots.add(content.snapshot());
+				snapshotTexts.add(expected.toString());
+			}
+			
+			assertEquals(message, expected.length(), content.getLength());
+			for (int i = 0; i < 4; i++) {
+				verifyRange(content, expected, random, message);
+			}
+			if (expected.length() > 0) {
+				int offset = random.nextInt(expected.length());
+				int count = random.nextInt(Math.min(expected.length() - offset, 4096) + 1);
+				content.getText(offset, count, segment);
+				assertEquals(message, expected.substring(offset, offset + count), segment.toString());
+				char[] array = segment.array;
+				int arrayOffset = segment.offset;
+				content.getText(0, Math.min(expected.length(), 100), segment);
+				assertEquals(message, expected.substring(offset, offset + count), new String(array, arrayOffset, count));
+				
+				count = random.nextInt(Math.min(expected.length() - offset, 16 * 1024) + 1);
+				ContentSequence sequence = new ContentSequence(content, offset, offset + count);
+				for (int i = random.nextInt(64); i < count; i += 1 + random.nextInt(256)) {
+					assertEquals(message + " index " + i, expected.charAt(offset + i), sequence.charAt(i));
+				}
+				for (int i = count - 1; i >= 0; i -= 1 + random.nextInt(4096)) {
+					assertEquals(message + " index " + i, expected.charAt(offset + i), sequence.charAt(i));
+				}
+			}
+			if (op % 100 == 0)
+				assertEquals(message, expected.toString(), content.getText());
+		}
+		assertEquals(name, expected.toString(), content.getText());
+		
+		for (int i = 0; i < snapshots.size(); i++) {
+			Content snapshot = snapshots.get(i);
+			assertEquals(name + " snapshot " + i, snapshotTexts.get(i), snapshot.getText());
+			snapshot.insert(0, "snapshot");
+			snapshot.delete(snapshot.getLength() / 2, Math.min(10, snapshot.getLength() / 2));
+		}
+		assertEquals(name, expected.toString(), content.getText());
+	}
+	
+	private static void verifyRange(Content content, CharSequence expected, Random random, String message) {
+		int length = expected.length();
+		if (length == 0) {
+			assertEquals(message, "", content.getText(0, 0));
+			return;
+		}
+		
+		int offset = random.nextInt(length);
+		assertEquals(message, expected.charAt(offset), content.charAt(offset));
+		
+		int count = random.nextInt(Math.min(length - offset, random.nextBoolean() ? 64 : 64 * 1024) + 1);
+		String text = expected.subSequence(offset, offset + count).toString();
+		assertEquals(message, text, content.getText(offset, count));
+		Segment segment = new Segment();
+		content.getText(offset, count, segment);
+		assertEquals(message, text, segment.toString());
+		CharSequence sequence = content.getSequence(offset, count);
+		assertEquals(message, count, sequence.length());
+		assertEquals(message, text, sequence.toString());
+		if (count > 0) {
+			int index = random.nextInt(count);
+			assertEquals(message, text.charAt(index), sequence.charAt(index));
+			assertEquals(message, text.substring(index), sequence.subSequence(index, count).toString());
+		}
+	}
+	
+	private static int randomLength(Random random) {
+		switch (random.nextInt(10)) {
+			case 0:
+				return random.nextInt(40 * 1024);
+			case 1:
+			case 2:
+				return random.nextInt(2000);
+			default:
+				return 1 + random.nextInt(8);
+		}
+	}
+	
+	private static String randomText(Random random, int length, boolean wide) {
+		String chars = wide ? WIDE_CHARS : LATIN_CHARS;
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(chars.charAt(random.nextInt(chars.length())));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,192 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EditJournalTest {
+	private static final String CHARS = "ab\ncd\u00e9\u20ac";
+	private static final int SEEDS = 50;
+	private static final int UNDO_LIMIT = 1000;
+	
+	private File file;
+	
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("journal", ".bin");
+		assertTrue(file.delete());
+	}
+	
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+	
+	@Test
+	public void replayIntoNonEditableModel() throws IOException {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			String initial = randomText(random, random.nextInt(50));
+			TextModel model = new TextModel();
+			model.setEditable(true);
+			model.setUndoLimit(UNDO_LIMIT);
+			model.setText(initial);
+			EditJournal journal = new EditJournal(file);
+			assertFalse("seed " + seed, journal.attach(model));
+			edit(model, random, 300);
+			journal.detach();
+			
+			TextModel recovered = new TextModel();
+			recovered.setUndoLimit(UNDO_LIMIT);
+			recovered.setText(initial);
+			assertFalse(recovered.isEditable());
+			assertRecovered("seed " + seed, model, recovered);
+			assertTrue("seed " + seed, file.delete());
+		}
+	}
+	
+	@Test
+	public void detachWhileFlushing() throws Exception {
+		Random random = new Random(0);
+		for (int cycle = 0; cycle < 1000; cycle++) {
+			TextModel model = new TextModel();
+			model.setEditable(true);
+			model.setUndoLimit(UNDO_LIMIT);
+			final EditJournal journal = new EditJournal(file);
+			journal.setSyncInterval(1, TimeUnit.MILLISECONDS);
+			assertFalse("cycle " + cycle, journal.attach(model));
+			final AtomicBoolean done = new AtomicBoolean();
+			Thread syncer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (!done.get()) {
+							journal.sync();
+						}
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			syncer.start();
+			try {
+				edit(model, random, 5);
+				long deadline = System.nanoTime() + random.nextInt((int) TimeUnit.MILLISECONDS.toNanos(1));
+				while (System.nanoTime() < deadline) {
+					model.insert(random.nextInt(model.getLength() + 1), randomText(random, 1));
+				}
+				journal.detach();
+			} finally {
+				done.set(true);
+				syncer.join();
+			}
+			
+			TextModel recovered = new TextModel();
+			EditJournal recovery = new EditJournal(file);
+			assertTrue("cycle " + cycle, recovery.attach(recovered));
+			recovery.detach();
+			assertEquals("cycle " + cycle, model.getText(), recovered.getText());
+			assertTrue("cycle " + cycle, file.delete());
+		}
+	}
+	
+	@Test
+	public void saveRewritesJournalOnSync() throws IOException {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			TextModel model = new TextModel();
+			model.setEditable(true);
+			model.setUndoLimit(UNDO_LIMIT);
+			EditJournal journal = new EditJournal(file);
+			journal.setSyncInterval(1, TimeUnit.HOURS);
+			assertFalse("seed " + seed, journal.attach(model));
+			edit(model, random, 100);
+			journal.sync();
+			long length = file.length();
+			
+			String saved;
+			try {
+				model.writeLock();
+				model.setDirty(false);
+				saved = model.getText();
+			} finally {
+				model.writeUnlock();
+			}
+			assertEquals("seed " + seed, length, file.length());
+			edit(model, random, 100);
+			journal.detach();
+			
+			TextModel recovered = new TextModel();
+			recovered.setEditable(true);
+			recovered.setUndoLimit(UNDO_LIMIT);
+			recovered.setText(saved);
+			assertRecovered("seed " + seed, model, recovered);
+			assertTrue("seed " + seed, file.delete());
+		}
+	}
+	
+	private void assertRecovered(String message, TextModel model, TextModel recovered) throws IOException {
+		EditJournal journal = new EditJournal(file);
+		assertTrue(message, journal.attach(recovered));
+		journal.detach();
+		
+		assertEquals(message, model.getText(), recovered.getText());
+		assertEquals(message, model.canRedo(), recovered.canRedo());
+		while (model.canUndo()) {
+			assertTrue(message, recovered.canUndo());
+			model.undo();
+			recovered.undo();
+			assertEquals(message, model.getText(), recovered.getText());
+		}
+		assertFalse(message, recovered.canUndo());
+	}
+	
+	private static void edit(TextModel model, Random random, int count) {
+		for (int op = 0; op < count; op++) {
+			int kind = random.nextInt(100);
+			int length = model.getLength();
+			if (kind < 35) {
+				model.insert(random.nextInt(length + 1), randomText(random, 1 + random.nextInt(3)));
+			} else if (kind < 55 && length > 0) {
+				int offset = random.nextInt(length);
+				model.delete(offset, 1 + random.nextInt(Math.min(8, length - offset)));
+			} else if (kind < 62) {
+				model.beginCompoundEdit();
+				for (int i = 0; i < 3; i++) {
+					model.insert(random.nextInt(model.getLength() + 1), randomText(random, 2));
+				}
+				model.endCompoundEdit();
+			} else if (kind < 68 && length > 2) {
+				List<TextEdit> edits = new ArrayList<>();
+				for (int offset = 0; offset < model.getLength() - 1 && edits.size() < 5; offset += 2 + random.nextInt(20)) {
+					edits.add(new TextEdit(offset, 1, randomText(random, random.nextInt(3))));
+				}
+				model.applyEdits(edits);
+			} else if (kind < 84) {
+				model.undo();
+			} else {
+				model.redo();
+			}
+		}
+	}
+	
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+		}
+		return text.toString();
+	}
+}
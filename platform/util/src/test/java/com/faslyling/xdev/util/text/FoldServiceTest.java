@@ -0,0 +1,101 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import com.faslyling.xdev.util.IntArrayList;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class FoldServiceTest {
+	private static final String CHARS = "ab{}\n";
+	private static final int SEEDS = 20;
+	
+	@Test
+	public void slicedLevelsMatchLazyLevels() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			String text = randomText(random, 2000 + random.nextInt(20000));
+			
+			TextModel expected = new TextModel();
+			expected.setText(text);
+			expected.setFoldHandler(new BraceFoldHandler());
+			
+			TextModel model = new TextModel();
+			model.setText(text);
+			QueueExecutor executor = new QueueExecutor();
+			FoldService service = new FoldService(model, executor, executor);
+			service.setTimeSlice(1 + random.nextInt(50), TimeUnit.MICROSECONDS);
+			service.start();
+			model.setFoldHandler(new BraceFoldHandler());
+			executor.drain();
+			
+			for (int line = 0; line < model.getLineCount(); line++) {
+				assertEquals("seed " + seed + " line " + line, expected.getFoldLevel(line), model.getFoldLevel(line));
+			}
+			service.stop();
+		}
+	}
+	
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+		}
+		return text.toString();
+	}
+	
+	private static final class BraceFoldHandler implements FoldHandler {
+		
+		@NonNull
+		@Override
+		public String getName() {
+			return "brace";
+		}
+		
+		@Override
+		public int getFoldLevel(@NonNull TextModel model, int line, @NonNull Segment segment) {
+			if (line == 0)
+				return 0;
+			
+			int level = model.getFoldLevel(line - 1);
+			model.getLineText(line - 1, segment);
+			for (int i = 0; i < segment.length(); i++) {
+				char c = segment.charAt(i);
+				if (c == '{')
+					level++;
+				else if (c == '}' && level > 0)
+					level--;
+			}
+			return level;
+		}
+		
+		@Override
+		public IntArrayList getPrecedingFoldLevels(@NonNull TextModel model, int line, @NonNull Segment segment, int lineLevel) {
+			return null;
+		}
+	}
+	
+	private static final class QueueExecutor implements Executor {
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+		
+		@Override
+		public void execute(@NonNull Runnable task) {
+			tasks.add(task);
+		}
+		
+		void drain() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+
+import com.faslyling.xdev.util.IntArrayList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class LineManagerTest {
+	private static final int SEEDS = 4;
+	private static final int OPERATIONS = 2000;
+	
+	@Test
+	public void randomEditsMatchNaiveLineIndex() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			LineManager lineManager = new LineManager();
+			StringBuilder text = new StringBuilder();
+			List<Integer> foldLevels = new ArrayList<>();
+			foldLevels.add(0);
+			List<LineManager> snapshots = new ArrayList<>();
+			List<Reference> references = new ArrayList<>();
+			
+			for (int op = 0; op < OPERATIONS; op++) {
+				String message = "seed " + seed + " op " + op;
+				int length = text.length();
+				int kind = random.nextInt(100);
+				if (kind < 45) {
+					String inserted = randomText(random, randomLength(random));
+					int offset = random.nextInt(length + 1);
+					IntArrayList endOffsets = LineScanner.scan(inserted);
+					int startLine = lineManager.getLineOfOffset(offset);
+					lineManager.contentInserted(startLine, offset, inserted.length(), endOffsets.size(), endOffsets);
+					text.insert(offset, inserted);
+					foldLevels.addAll(startLine, Collections.nCopies(endOffsets.size(), 0));
+				} else if (kind < 85 && length > 0) {
+					int offset = random.nextInt(length);
+					int count = Math.min(length - offset, randomLength(random));
+					int startLine = lineManager.getLineOfOffset(offset);
+					int endLine = lineManager.getLineOfOffset(offset + count);
+					lineManager.contentRemoved(startLine, offset, count, endLine - startLine);
+					text.delete(offset, offset + count);
+					foldLevels.subList(startLine, endLine).clear();
+				} else if (kind < 87) {
+					String replaced = randomText(random, random.nextInt(100 * 1024));
+					IntArrayList endOffsets = LineScanner.scan(replaced);
+					endOffsets.add(replaced.length() + 1);
+					lineManager._contentInserted(endOffsets);
+					text.setLength(0);
+					text.append(replaced);
+					foldLevels.clear();
+					foldLevels.addAll(Collections.nCopies(endOffsets.size(), 0));
+				} else if (kind < 95) {
+					for (int i = 0; i < 16; i++) {
+						int line = random.nextInt(foldLevels.size());
+						int level = random.nextInt(100);
+						lineManager.setFoldLevel(line, level);
+						foldLevels.set(line, level);
+					}
+				} else {
+					snapshots.add(lineManager.snapshot());
+					references.add(new Reference(text, foldLevels));
+				}
+				
+				verify(lineManager, new Reference(text, foldLevels), random, message);
+				if (op % 100 == 0) {
+					for (int i = 0; i < snapshots.size(); i++) {
+						verify(snapshots.get(i), references.get(i), random, message + " snapshot " + i);
+					}
+				}
+			}
+		}
+	}
+	
+	private static void verify(LineManager lineManager, Reference reference, Random random, String message) {
+		int lineCount = reference.lineEnds.size();
+		assertEquals(message, lineCount, lineManager.getLineCount());
+		for (int i = 0; i < 8; i++) {
+			int line = random.nextInt(lineCount);
+			assertEquals(message + " line " + line, reference.lineEnds.get(line), lineManager.getLineEndOffset(line));
+			assertEquals(message + " line " + line, (int) reference.foldLevels.get(line), lineManager.getFoldLevel(line));
+			
+			int offset = random.nextInt(reference.length + 1);
+			assertEquals(message + " offset " + offset, reference.getLineOfOffset(offset), lineManager.getLineOfOffset(offset));
+		}
+		assertEquals(message, reference.length + 1, lineManager.getLineEndOffset(lineCount - 1));
+		assertEquals(message, lineCount - 1, lineManager.getLineOfOffset(reference.length));
+	}
+	
+	private static int randomLength(Random random) {
+		switch (random.nextInt(10)) {
+			case 0:
+				return random.nextInt(64 * 1024);
+			case 1:
+			case 2:
+				return random.nextInt(2000);
+			default:
+				return 1 + random.nextInt(8);
+		}
+	}
+	
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(random.nextInt(4) == 0 ? '\n' : 'a');
+		}
+		return text.toString();
+	}
+	
+	private static final class Reference {
+		final int length;
+		final IntArrayList lineEnds = new IntArrayList();
+		final List<Integer> foldLevels;
+		
+		Reference(CharSequence text, List<Integer> foldLevels) {
+			length = text.length();
+			for (int i = 0; i < length; i++) {
+				if (text.charAt(i) == '\n')
+					lineEnds.add(i + 1);
+			}
+			lineEnds.add(length + 1);
+			this.foldLevels = new ArrayList<>(foldLevels);
+		}
+		
+		int getLineOfOffset(int offset) {
+			int line = 0;
+			while (lineEnds.get(line) <= offset) {
+				line++;
+			}
+			return line;
+		}
+	}
+}
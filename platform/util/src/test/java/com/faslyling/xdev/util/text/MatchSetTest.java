@@ -0,0 +1,119 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+
+import com.faslyling.xdev.util.IntPair;
+import com.faslyling.xdev.util.LongArrayList;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MatchSetTest {
+	
+	@Test
+	public void literalMatchesFollowEdits() {
+		check(Pattern.compile("ab", Pattern.LITERAL), -1, false);
+		check(Pattern.compile("AB", Pattern.LITERAL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE), -1, true);
+	}
+	
+	@Test
+	public void patternMatchesFollowEdits() {
+		check(Pattern.compile("a{1,3}b"), 4, false);
+		check(Pattern.compile("c?"), 1, false);
+		check(Pattern.compile("\\bab\\b"), 2, false);
+		check(Pattern.compile("(?m)^a"), 1, false);
+		check(Pattern.compile("b\\nc"), 3, false);
+		check(Pattern.compile("(?<=a)b"), 2, false);
+	}
+	
+	@Test
+	public void distantMatchesAreKept() {
+		StringBuilder text = new StringBuilder("needle\n");
+		for (int i = 0; i < 10000; i++) {
+			text.append("abcdefghi\n");
+		}
+		text.append("needle");
+		TextModel model = new TextModel();
+		model.setEditable(true);
+		model.setText(text.toString());
+		MatchSet set = new MatchSet(model, "needle", false);
+		set.attach();
+		for (int i = 0; i < 100; i++) {
+			model.insert(50000 + i, i % 10 == 0 ? "needle" : "x");
+		}
+		model.delete(50000, 6);
+		assertEquals(expected(Pattern.compile("needle", Pattern.LITERAL), model.getText()).toString(),
+				set.getMatches().toString());
+	}
+	
+	private static void check(Pattern pattern, int maxSpan, boolean ignoreCase) {
+		Random random = new Random(11);
+		for (int round = 0; round < 20; round++) {
+			TextModel model = new TextModel(new TextContent());
+			model.setEditable(true);
+			model.setUndoLimit(100);
+			StringBuilder text = new StringBuilder();
+			MatchSet set = maxSpan < 0 ? new MatchSet(model, pattern.pattern(), ignoreCase)
+					: new MatchSet(model, pattern, maxSpan);
+			if (round % 2 == 0) {
+				model.setText("aab\nab c");
+				text.append("aab\nab c");
+			}
+			set.attach();
+			for (int op = 0; op < 300; op++) {
+				int kind = random.nextInt(10);
+				if (kind < 5 || text.length() == 0) {
+					int offset = random.nextInt(text.length() + 1);
+					String inserted = random(random, random.nextInt(op % 30 == 0 ? 60 : 4));
+					model.insert(offset, inserted);
+					text.insert(offset, inserted);
+				} else if (kind < 9) {
+					int offset = random.nextInt(text.length());
+					int length = random.nextInt(Math.min(10, text.length() - offset) + 1);
+					model.delete(offset, length);
+					text.delete(offset, offset + length);
+				} else if (model.canUndo()) {
+					model.undo();
+					text.setLength(0);
+					text.append(model.getText());
+				}
+				LongArrayList expected = expected(pattern, text);
+				assertEquals(pattern + " at " + op, expected.toString(), set.getMatches().toString());
+				
+				int startLine = random.nextInt(model.getLineCount());
+				int endLine = startLine + random.nextInt(model.getLineCount() - startLine);
+				int start = model.getLineStartOffset(startLine);
+				int end = model.getLineEndOffset(endLine);
+				LongArrayList visible = new LongArrayList();
+				for (int i = 0; i < expected.size(); i++) {
+					int offset = IntPair.first(expected.get(i));
+					int length = IntPair.second(expected.get(i));
+					if (offset + length > start && offset < end || offset == start && length == 0)
+						visible.add(expected.get(i));
+				}
+				assertEquals(visible.toString(), set.getMatches(startLine, endLine).toString());
+			}
+			set.detach();
+		}
+	}
+	
+	private static LongArrayList expected(Pattern pattern, CharSequence text) {
+		LongArrayList matches = new LongArrayList();
+		Matcher matcher = pattern.matcher(text);
+		while (matcher.find()) {
+			matches.add(IntPair.of(matcher.start(), matcher.end() - matcher.start()));
+		}
+		return matches;
+	}
+	
+	private static String random(Random random, int length) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			builder.append("abcA\n ".charAt(random.nextInt(6)));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,77 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+public class TextModelLoadTest {
+	private static final String CHARS = "ab\ncd\u00e9";
+	private static final int CHUNK = 64 * 1024;
+	private static final int[] LENGTHS = {0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 2 * CHUNK, 3 * CHUNK + 17};
+	
+	@Test
+	public void loadMatchesSetText() throws IOException {
+		Random random = new Random(0);
+		for (int length : LENGTHS) {
+			String text = randomText(random, length);
+			if (length > CHUNK + 1)
+				text = text.substring(0, CHUNK + 1) + '\u20ac' + text.substring(CHUNK + 2);
+			
+			TextModel expected = new TextModel();
+			expected.setText(text);
+			for (Content content : new Content[]{new TextContent(), new ChunkedContent(), new CompactContent(),
+					new RopeContent(), new PieceTableContent()}) {
+				String name = content.getClass().getSimpleName() + " " + length;
+				TextModel model = new TextModel(content);
+				model.setEditable(true);
+				model.setUndoLimit(10);
+				model.insert(0, "old");
+				model.load(new ShortReader(text, new Random(length)));
+				
+				assertEquals(name, text, model.getText());
+				assertFalse(name, model.canUndo());
+				assertEquals(name, expected.getLineCount(), model.getLineCount());
+				for (int line = 0; line < model.getLineCount(); line++) {
+					assertEquals(name, expected.getLineEndOffset(line), model.getLineEndOffset(line));
+				}
+				
+				model.insert(length / 2, "x\ny");
+				assertEquals(name, text.substring(0, length / 2) + "x\ny" + text.substring(length / 2), model.getText());
+			}
+		}
+	}
+	
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+		}
+		return text.toString();
+	}
+	
+	private static final class ShortReader extends Reader {
+		private final Reader reader;
+		private final Random random;
+		
+		ShortReader(String text, Random random) {
+			this.reader = new StringReader(text);
+			this.random = random;
+		}
+		
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			return reader.read(buffer, offset, Math.min(length, 1 + random.nextInt(5000)));
+		}
+		
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
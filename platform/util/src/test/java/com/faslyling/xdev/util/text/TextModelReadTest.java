@@ -0,0 +1,101 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TextModelReadTest {
+	private static final String LINE = "abcdefgh";
+	private static final int READERS = 3;
+	private static final long DURATION_MS = 500;
+	
+	@Test
+	public void optimisticReadsUnderConcurrentWrites() throws InterruptedException {
+		readWhileWriting(false);
+		readWhileWriting(true);
+	}
+	
+	@Test
+	public void snapshotsDoNotWaitForReaders() throws InterruptedException {
+		final TextModel model = new TextModel();
+		model.setText(LINE + '\n' + LINE);
+		final AtomicReference<TextSnapshot> snapshot = new AtomicReference<>();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				snapshot.set(model.snapshot());
+			}
+		});
+		boolean finished;
+		try {
+			model.readLock();
+			thread.start();
+			thread.join(10000);
+			finished = !thread.isAlive();
+		} finally {
+			model.readUnlock();
+		}
+		thread.join();
+		
+		assertTrue(finished);
+		assertEquals(LINE + '\n' + LINE, snapshot.get().getText());
+		assertEquals(2, snapshot.get().getLineCount());
+	}
+	
+	private static void readWhileWriting(boolean optimisticReads) throws InterruptedException {
+		final TextModel model = new TextModel(new ChunkedContent(), optimisticReads);
+		model.setEditable(true);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append(LINE).append('\n');
+		}
+		model.setText(text.toString());
+		
+		final AtomicReference<String> failure = new AtomicReference<>();
+		final long deadline = System.currentTimeMillis() + DURATION_MS;
+		Thread[] readers = new Thread[READERS];
+		for (int i = 0; i < READERS; i++) {
+			final Random random = new Random(i);
+			readers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (System.currentTimeMillis() < deadline && failure.get() == null) {
+						for (int j = 0; j < 256; j++) {
+							int line = random.nextInt(model.getLineCount());
+							try {
+								String lineText = model.getLineText(line);
+								int lineLength = model.getLineLength(line);
+								if (!lineText.equals(LINE) && !lineText.isEmpty()
+										|| lineLength != LINE.length() && lineLength != 0)
+									failure.set("line " + line + ": '" + lineText + "' " + lineLength);
+							} catch (ArrayIndexOutOfBoundsException ignored) {
+							}
+						}
+					}
+				}
+			});
+			readers[i].start();
+		}
+		
+		Random random = new Random(42);
+		while (System.currentTimeMillis() < deadline) {
+			int line = random.nextInt(model.getLineCount() - 1);
+			int offset = model.getLineStartOffset(line);
+			if (random.nextBoolean() || model.getLineCount() < 500)
+				model.insert(offset, LINE + '\n');
+			else
+				model.delete(offset, LINE.length() + 1);
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		
+		assertNull(failure.get());
+		assertEquals(model.getLineCount() - 1, model.getLength() / (LINE.length() + 1));
+	}
+}
@@ -0,0 +1,43 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+
+import com.faslyling.xdev.util.IntPair;
+import com.faslyling.xdev.util.LongArrayList;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+public class TextSearchTest {
+	
+	@Test
+	public void findAllReturnsNonOverlappingMatches() {
+		Random random = new Random(5);
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 700 * 1024) {
+			text.append(random.nextInt(8) == 0 ? "aAbab\n" : random.nextBoolean() ? "a" : "b");
+		}
+		TextModel model = new TextModel();
+		model.setText(text.toString());
+		
+		String[] patterns = {"a", "aa", "aba", "abab", "bb", "ab\na", "aab"};
+		for (String pattern : patterns) {
+			assertEquals(pattern, expected(text.toString(), pattern),
+					new TextSearch(model, pattern, false).findAll().toString());
+			assertEquals(pattern, expected(text.toString().toLowerCase(Locale.ROOT), pattern),
+					new TextSearch(model, pattern.toUpperCase(Locale.ROOT), true).findAll().toString());
+		}
+	}
+	
+	private static String expected(String text, String pattern) {
+		LongArrayList matches = new LongArrayList();
+		int index = text.indexOf(pattern);
+		while (index != -1) {
+			matches.add(IntPair.of(index, pattern.length()));
+			index = text.indexOf(pattern, index + pattern.length());
+		}
+		return matches.toString();
+	}
+}
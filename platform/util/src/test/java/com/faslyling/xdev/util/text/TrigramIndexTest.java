@@ -0,0 +1,92 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.faslyling.xdev.util.IntArrayList;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class TrigramIndexTest {
+	private static final String[] WORDS = {"foo", "bar", "Hello", "world", "abc", "xyz", "\n", " ", "fooBar", "\n"};
+	private static final String[] QUERIES = {"foo", "oBa", "Hello wor", "xyzabc", "ld f", "fo"};
+	private static final String[] PATTERNS = {"bar\\s*foo", "(?i)HELLO", "o[rw]l"};
+	
+	@Test
+	public void findLinesMatchesNaiveScan() {
+		Random random = new Random(3);
+		for (int round = 0; round < 10; round++) {
+			TextModel model = new TextModel(new TextContent());
+			model.setEditable(true);
+			model.setUndoLimit(100);
+			StringBuilder text = new StringBuilder();
+			TrigramIndex index = new TrigramIndex(model);
+			index.attach();
+			for (int op = 0; op < 400; op++) {
+				int kind = random.nextInt(20);
+				if (kind < 13 || text.length() == 0) {
+					int offset = random.nextInt(text.length() + 1);
+					String inserted = words(random, random.nextInt(op % 50 == 0 ? 2000 : 4));
+					model.insert(offset, inserted);
+					text.insert(offset, inserted);
+				} else if (kind < 19) {
+					int offset = random.nextInt(text.length());
+					int length = random.nextInt(Math.min(op % 40 == 0 ? 20000 : 20, text.length() - offset) + 1);
+					model.delete(offset, length);
+					text.delete(offset, offset + length);
+				} else if (model.canUndo()) {
+					model.undo();
+					text.setLength(0);
+					text.append(model.getText());
+				}
+				if (op % 7 == 0)
+					verify(index, text.toString(), random);
+			}
+			index.detach();
+		}
+	}
+	
+	@Test
+	public void requiredLiteral() {
+		assertEquals("fgh", TrigramIndex.requiredLiteral("ab(de)?fgh"));
+		assertEquals("cde", TrigramIndex.requiredLiteral("ab+cde"));
+		assertEquals("yzw", TrigramIndex.requiredLiteral("x{2,3}yzw"));
+		assertEquals("", TrigramIndex.requiredLiteral("a|b"));
+		assertEquals("", TrigramIndex.requiredLiteral("\\x41BCD"));
+		assertEquals("foo.bar", TrigramIndex.requiredLiteral("foo\\.bar"));
+		assertEquals("hello", TrigramIndex.requiredLiteral("[abc]hello\\d"));
+	}
+	
+	private static void verify(TrigramIndex index, String text, Random random) {
+		String[] lines = text.split("\n", -1);
+		for (String query : QUERIES) {
+			boolean ignoreCase = random.nextBoolean();
+			IntArrayList expected = new IntArrayList();
+			for (int line = 0; line < lines.length; line++) {
+				if (ignoreCase ? lines[line].toLowerCase().contains(query.toLowerCase()) : lines[line].contains(query))
+					expected.add(line);
+			}
+			assertArrayEquals(query, expected.toArray(), index.findLines(query, ignoreCase).toArray());
+		}
+		for (String regex : PATTERNS) {
+			Pattern pattern = Pattern.compile(regex);
+			IntArrayList expected = new IntArrayList();
+			for (int line = 0; line < lines.length; line++) {
+				if (pattern.matcher(lines[line]).find())
+					expected.add(line);
+			}
+			assertArrayEquals(regex, expected.toArray(), index.findLines(pattern).toArray());
+		}
+	}
+	
+	private static String words(Random random, int count) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			builder.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,322 @@
+package com.faslyling.xdev.util.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class UndoManagerTest {
+	private static final String CHARS = "ab\ncd\u00e9\u20ac";
+	private static final int SEEDS = 50;
+	
+	@Test
+	public void undoAndRedoRetraceHistory() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			TextModel model = newModel();
+			List<String> history = edit(model, random, 300);
+			
+			List<String> undone = undoAll(model, history, seed);
+			assertEquals("seed " + seed, history.get(0), model.getText());
+			redoAll(model, undone, seed);
+			assertEquals("seed " + seed, history.get(history.size() - 1), model.getText());
+		}
+	}
+	
+	@Test
+	public void undoAfterPartialUndoAndNewEdits() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			TextModel model = newModel();
+			List<String> history = edit(model, random, 100);
+			for (int i = random.nextInt(10); i > 0 && model.canUndo(); i--) {
+				model.undo();
+			}
+			
+			String current = model.getText();
+			int index = history.lastIndexOf(current);
+			assertTrue("seed " + seed, index >= 0);
+			history = new ArrayList<>(history.subList(0, index + 1));
+			List<String> edited = edit(model, random, 100);
+			history.addAll(edited.subList(1, edited.size()));
+			assertFalse("seed " + seed, model.canRedo());
+			
+			undoAll(model, history, seed);
+			assertEquals("seed " + seed, history.get(0), model.getText());
+		}
+	}
+	
+	@Test
+	public void limitsKeepRecentHistory() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			TextModel model = newModel();
+			model.setUndoLimit(5 + random.nextInt(50));
+			long limit = 256 + random.nextInt(4096);
+			model.setUndoByteLimit(limit);
+			List<String> history = edit(model, random, 300);
+			assertTrue("seed " + seed, model.getUndoHistorySize() <= limit);
+			
+			List<String> undone = undoAll(model, history, seed);
+			redoAll(model, undone, seed);
+			assertEquals("seed " + seed, history.get(history.size() - 1), model.getText());
+		}
+	}
+	
+	@Test
+	public void bulkEditsUndoInOneStep() {
+		TextModel model = newModel();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("foo bar\n");
+		}
+		model.setText(text);
+		String original = model.getText();
+		
+		List<TextEdit> edits = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			edits.add(new TextEdit(i * 8, 3, "bazz"));
+		}
+		model.applyEdits(edits);
+		String replaced = model.getText();
+		assertEquals(original.replace("foo", "bazz"), replaced);
+		
+		model.undo();
+		assertEquals(original, model.getText());
+		model.redo();
+		assertEquals(replaced, model.getText());
+	}
+	
+	@Test
+	public void largeUnitsUndoAndRedoOnlyTouchEditedText() {
+		for (int seed = 0; seed < SEEDS; seed++) {
+			Random random = new Random(seed);
+			String middle = randomText(random, 20000);
+			TextModel model = newModel();
+			model.setText(randomText(random, 100) + middle + randomText(random, 100));
+			ChangeCounter counter = new ChangeCounter();
+			model.addModelListener(counter);
+			
+			List<String> history = new ArrayList<>();
+			history.add(model.getText());
+			for (int unit = 0; unit < 10; unit++) {
+				model.beginCompoundEdit();
+				for (int step = 17 + random.nextInt(48); step > 0; step--) {
+					editNearEnds(model, random, middle.length());
+				}
+				model.endCompoundEdit();
+				history.add(model.getText());
+			}
+			
+			for (int i = history.size() - 2; i >= 0; i--) {
+				counter.changed = 0;
+				model.undo();
+				assertEquals("seed " + seed, history.get(i), model.getText());
+				assertTrue("seed " + seed + ": undo touched " + counter.changed, counter.changed < middle.length());
+			}
+			assertFalse("seed " + seed, model.canUndo());
+			for (int i = 1; i < history.size(); i++) {
+				counter.changed = 0;
+				model.redo();
+				assertEquals("seed " + seed, history.get(i), model.getText());
+				assertTrue("seed " + seed + ": redo touched " + counter.changed, counter.changed < middle.length());
+			}
+			assertFalse("seed " + seed, model.canRedo());
+		}
+	}
+	
+	@Test
+	public void journalReplayRestoresTextAndHistory() throws IOException {
+		File file = File.createTempFile("journal", ".bin");
+		try {
+			for (int seed = 0; seed < SEEDS; seed++) {
+				Random random = new Random(seed);
+				String initial = randomText(random, random.nextInt(50));
+				TextModel model = newModel();
+				model.setText(initial);
+				assertTrue("seed " + seed, file.delete());
+				EditJournal journal = new EditJournal(file);
+				assertFalse("seed " + seed, journal.attach(model));
+				edit(model, random, 200);
+				journal.detach();
+				
+				TextModel recovered = newModel();
+				recovered.setText(initial);
+				journal = new EditJournal(file);
+				assertTrue("seed " + seed, journal.attach(recovered));
+				journal.detach();
+				
+				assertEquals("seed " + seed, model.getText(), recovered.getText());
+				assertEquals("seed " + seed, model.canRedo(), recovered.canRedo());
+				while (model.canUndo()) {
+					assertTrue("seed " + seed, recovered.canUndo());
+					model.undo();
+					recovered.undo();
+					assertEquals("seed " + seed, model.getText(), recovered.getText());
+				}
+				assertFalse("seed " + seed, recovered.canUndo());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	private static TextModel newModel() {
+		TextModel model = new TextModel();
+		model.setEditable(true);
+		model.setUndoLimit(Integer.MAX_VALUE);
+		return model;
+	}
+	
+	private static List<String> edit(TextModel model, Random random, int count) {
+		List<String> history = new ArrayList<>(count + 1);
+		history.add(model.getText());
+		for (int op = 0; op < count; op++) {
+			int kind = random.nextInt(100);
+			int length = model.getLength();
+			if (kind < 40) {
+				model.insert(random.nextInt(length + 1), randomText(random, 1 + random.nextInt(3)));
+			} else if (kind < 50) {
+				int offset = random.nextInt(length + 1);
+				for (int i = 0; i < 4; i++) {
+					model.insert(offset++, randomText(random, 1));
+					history.add(model.getText());
+				}
+				model.insert(offset, randomText(random, 1));
+			} else if (kind < 60 && length > 3) {
+				int offset = 3 + random.nextInt(length - 3);
+				for (int i = 0; i < 2; i++) {
+					model.delete(--offset, 1);
+					history.add(model.getText());
+				}
+				model.delete(--offset, 1);
+			} else if (kind < 75 && length > 0) {
+				int offset = random.nextInt(length);
+				model.delete(offset, 1 + random.nextInt(Math.min(8, length - offset)));
+			} else if (kind < 85) {
+				model.beginCompoundEdit();
+				for (int i = 0; i < 4; i++) {
+					int offset = random.nextInt(model.getLength() + 1);
+					if (i % 2 == 0 && offset < model.getLength())
+						model.delete(offset, 1);
+					else
+						model.insert(offset, randomText(random, 2));
+				}
+				model.endCompoundEdit();
+			} else if (length > 2) {
+				List<TextEdit> edits = new ArrayList<>();
+				int offset = 0;
+				while (offset < model.getLength() - 1 && edits.size() < 8) {
+					int deleted = random.nextInt(2);
+					edits.add(new TextEdit(offset, deleted, randomText(random, random.nextInt(3))));
+					offset += deleted + 1 + random.nextInt(20);
+				}
+				model.applyEdits(edits);
+			} else {
+				model.insert(0, randomText(random, 4));
+			}
+			history.add(model.getText());
+		}
+		return history;
+	}
+	
+	private static void editNearEnds(TextModel model, Random random, int middle) {
+		int length = model.getLength();
+		int margin = (length - middle) / 2;
+		int offset = random.nextInt(margin + 1);
+		if (random.nextBoolean())
+			offset = length - offset;
+		
+		int kind = random.nextInt(3);
+		if (kind == 0 || offset == length) {
+			model.insert(offset, randomText(random, 1 + random.nextInt(4)));
+		} else if (kind == 1) {
+			model.delete(offset, Math.min(1 + random.nextInt(4), length - offset));
+		} else {
+			List<TextEdit> edits = new ArrayList<>();
+			edits.add(new TextEdit(0, random.nextInt(2), randomText(random, random.nextInt(3))));
+			edits.add(new TextEdit(length - 1, random.nextInt(2), randomText(random, random.nextInt(3))));
+			model.applyEdits(edits);
+		}
+	}
+	
+	private static List<String> undoAll(TextModel model, List<String> history, int seed) {
+		List<String> undone = new ArrayList<>();
+		undone.add(model.getText());
+		int index = history.size() - 1;
+		while (model.canUndo()) {
+			model.undo();
+			String text = model.getText();
+			do {
+				index--;
+			} while (index >= 0 && !history.get(index).equals(text));
+			assertTrue("seed " + seed + ": undo reached a state that was never edited to", index >= 0);
+			undone.add(text);
+		}
+		return undone;
+	}
+	
+	private static void redoAll(TextModel model, List<String> undone, int seed) {
+		for (int i = undone.size() - 2; i >= 0; i--) {
+			assertTrue("seed " + seed, model.canRedo());
+			model.redo();
+			assertEquals("seed " + seed, undone.get(i), model.getText());
+		}
+		assertFalse("seed " + seed, model.canRedo());
+	}
+	
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+		}
+		return text.toString();
+	}
+	
+	private static final class ChangeCounter implements ModelListener {
+		int changed;
+		
+		@Override
+		public void textSet(@NonNull TextModel model) {
+		}
+		
+		@Override
+		public void textPreInserted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		}
+		
+		@Override
+		public void textInserted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+			changed += length;
+		}
+		
+		@Override
+		public void textPreDeleted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+		}
+		
+		@Override
+		public void textDeleted(@NonNull TextModel model, int startLine, int start, int length, int numLines) {
+			changed += length;
+		}
+		
+		@Override
+		public void transactionComplete(@NonNull TextModel model) {
+		}
+		
+		@Override
+		public void foldLevelChanged(@NonNull TextModel model, int startLine, int endLine) {
+		}
+		
+		@Override
+		public void foldHandlerChanged(@NonNull TextModel model) {
+		}
+	}
+}